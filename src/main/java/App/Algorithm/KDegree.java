@@ -3,13 +3,17 @@ package App.Algorithm;
 import App.Common.Exceptions.NotRealizedGraphException;
 import App.Common.Utils.DegreeUtil;
 import App.Common.Utils.DemoDataCreator;
+import App.Model.AnonymizationStats;
+import App.Model.CompactGraph;
 import App.Model.DegreeContext;
 import App.Model.Graph;
+import App.Model.OverlayGraph;
 import App.Model.Vertex;
 import org.apache.log4j.BasicConfigurator;
 import org.apache.log4j.Logger;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Created by Keinan.Gilad on 9/23/2016.
@@ -17,54 +21,283 @@ import java.util.*;
 public class KDegree implements IAlgorithm {
     private static Logger logger = Logger.getLogger(KDegree.class);
     public static final int NOISE_ADDITION = 10;
+    // rounds of degree noise before falling back to building (and failing) the supergraph
+    public static final int MAX_PROBES = 1000;
+    public static final int DEFAULT_MAX_ATTEMPTS = 1000;
+    public static final long DEFAULT_TIME_BUDGET_MILLIS = 5 * 60 * 1000;
+    // seeds of the attempts
     private static final Random position = new Random();
 
+    /**
+     * How the vector of degrees is anonymized.
+     */
+    public enum DegreeAnonymizationMode {
+        // groups of k from the tail of the vector, each set to the degree of its first element
+        GREEDY,
+        // Liu-Terzi dynamic programming, the grouping which adds the fewest degrees
+        DYNAMIC_PROGRAMMING
+    }
+
+    /**
+     * Which result of a race between several seeds is returned.
+     */
+    public enum RaceResult {
+        // the first realized graph, the other attempts are cancelled
+        FIRST_REALIZED,
+        // the realized graph with the fewest added edges among those done by the race deadline
+        FEWEST_EDGES
+    }
+
+    private DegreeAnonymizationMode degreeAnonymizationMode = DegreeAnonymizationMode.DYNAMIC_PROGRAMMING;
+    // independent anonymizations racing on their own copy of the graph, 1 to anonymize on the calling thread
+    private int parallelAttempts = 1;
+    private RaceResult raceResult = RaceResult.FIRST_REALIZED;
+    // for FEWEST_EDGES, how long to wait for more results once one was realized
+    private long raceDeadlineMillis = 10 * 1000;
+    // budget of the noise retries
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private long timeBudgetMillis = DEFAULT_TIME_BUDGET_MILLIS;
+
     /**
      * Main function
+     * With parallelAttempts > 1 several seeds race, see {@link #setParallelAttempts(int)}.
      *
      * @param originalGraph - original graph to anonymize
      * @param k - the K input parameter from the user
-     * @return anonymized graph
+     * @return anonymized graph, or the graph reached when the budget ran out
      */
     @Override
     public Graph anonymize(Graph originalGraph, Integer k) {
-        // 1. get vector of degrees descending
-        DegreeContext[] originalDegrees = getDegreeVector(originalGraph);
-        // 2. anonymize the degrees
-        DegreeContext[] anonymizeDegreeVector = degreeAnonymization(originalDegrees, k);
-        // 3. add additional edges according to the anonymize vector
-        createAdditionalDegreeVector(originalDegrees, anonymizeDegreeVector);
-
-        Graph anoymizeGraph = null;
-        try {
-            // 4. create sub-graph from the degrees vector
-            anoymizeGraph = supergraph(originalGraph, anonymizeDegreeVector);
+        if (parallelAttempts > 1) {
+            return race(originalGraph, k);
+        }
+        // 0. edges are added to an overlay of a frozen snapshot, the given graph is not changed
+        return anonymize(new OverlayGraph(originalGraph.freeze()), k, position.nextLong());
+    }
+
+    /**
+     * Every attempt anonymizes the degrees and builds the supergraph, when it is not realized noise is added and the
+     * next attempt starts from the graph with the edges added so far, until the attempt or time budget runs out.
+     * The metrics of the attempts are kept in {@link Graph#getAnonymizationStats()}.
+     * An interrupt stops it like the budget.
+     *
+     * @param originalGraph - overlay of the graph to anonymize, edges are added to it
+     * @param k - the K input parameter from the user
+     * @param seed - seed of all the random choices
+     * @return anonymized graph, or the graph reached when the budget ran out
+     */
+    private Graph anonymize(OverlayGraph originalGraph, Integer k, long seed) {
+        Random random = new Random(seed);
+        AnonymizationStats stats = new AnonymizationStats();
+        stats.setSeed(seed);
+        originalGraph.setAnonymizationStats(stats);
+        long deadline = System.currentTimeMillis() + timeBudgetMillis;
+
+        // 1. get vector of degrees descending, updated with every edge added from now on
+        DegreeVector degreeVector = new DegreeVector(originalGraph, getDegreeVector(originalGraph));
+        for (int attemptNumber = 1; ; attemptNumber++) {
+            AnonymizationStats.Attempt attempt = new AnonymizationStats.Attempt(attemptNumber);
+            stats.addAttempt(attempt);
+
+            // 2. anonymize the degrees, probing with degree noise until the additional vector is realizable
+            // 3. add additional edges according to the anonymize vector
+            long start = System.nanoTime();
+            DegreeContext[] anonymizeDegreeVector = probeDegreeAnonymization(degreeVector.getVector(), k, attempt, random);
+            long anonymized = System.nanoTime();
+            attempt.setDegreeAnonymizationMillis((anonymized - start) / 1000000);
+
+            int edges = originalGraph.getEdges().size();
+            try {
+                // 4. create sub-graph from the degrees vector
+                supergraph(originalGraph, anonymizeDegreeVector, degreeVector);
+                stats.setRealized(true);
+            } catch (NotRealizedGraphException e) {
+                attempt.setFailure(e.getMessage());
+            }
+            attempt.setEdgesAdded(originalGraph.getEdges().size() - edges);
+            attempt.setSupergraphMillis((System.nanoTime() - anonymized) / 1000000);
+
             // 5. return the anonymize graph
-            return anoymizeGraph;
-        } catch (NotRealizedGraphException e) {
-            //logger.debug(e.getMessage());
+            if (stats.isRealized()) {
+                logger.debug(stats);
+                return originalGraph;
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                logger.debug(String.format("Cancelled: %s", stats));
+                return originalGraph;
+            }
+            if (attemptNumber >= maxAttempts || System.currentTimeMillis() >= deadline) {
+                logger.warn(String.format("Giving up the %s-degree anonymization: %s", k, stats));
+                return originalGraph;
+            }
 
             // not realized -> repeat with noise.
             // add noise to original graph and trying again
-            addNoise(originalGraph);
-            return anonymize(originalGraph, k);
+            attempt.setNoiseEdges(addNoise(originalGraph, degreeVector, random));
+        }
+    }
+
+    /**
+     * Racing parallelAttempts anonymizations with distinct seeds, each on its own copy of the graph.
+     *
+     * @param originalGraph - original graph to anonymize, not changed
+     * @param k - the K input parameter from the user
+     * @return the result chosen by raceResult, or the first one to give up if none was realized
+     */
+    private Graph race(Graph originalGraph, final Integer k) {
+        // the frozen graph is shared, every attempt adds to an overlay of it
+        final CompactGraph base = originalGraph.freeze();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelAttempts);
+        CompletionService<Graph> completionService = new ExecutorCompletionService<>(executor);
+        List<Future<Graph>> futures = new ArrayList<>(parallelAttempts);
+        try {
+            for (int i = 0; i < parallelAttempts; i++) {
+                final long seed = position.nextLong();
+                futures.add(completionService.submit(new Callable<Graph>() {
+                    @Override
+                    public Graph call() {
+                        return anonymize(new OverlayGraph(base), k, seed);
+                    }
+                }));
+            }
+
+            Graph best = null;
+            Graph fallback = null;
+            long deadline = Long.MAX_VALUE;
+            for (int done = 0; done < parallelAttempts; done++) {
+                long wait = deadline - System.currentTimeMillis();
+                Future<Graph> future = deadline == Long.MAX_VALUE ? completionService.take()
+                        : completionService.poll(Math.max(0, wait), TimeUnit.MILLISECONDS);
+                if (future == null) {
+                    break; // race deadline
+                }
+                Graph graph = getResult(future);
+                AnonymizationStats stats = graph.getAnonymizationStats();
+                if (!stats.isRealized()) {
+                    fallback = fallback == null ? graph : fallback;
+                    continue;
+                }
+                if (best == null || stats.getEdgesAdded() < best.getAnonymizationStats().getEdgesAdded()) {
+                    best = graph;
+                }
+                if (raceResult == RaceResult.FIRST_REALIZED) {
+                    break;
+                }
+                if (deadline == Long.MAX_VALUE) {
+                    deadline = System.currentTimeMillis() + raceDeadlineMillis;
+                }
+            }
+            if (best != null) {
+                logger.debug(String.format("Race won by seed %s", best.getAnonymizationStats().getSeed()));
+                return best;
+            }
+            return fallback;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            // cancelling the rest
+            for (Future<Graph> future : futures) {
+                future.cancel(true);
+            }
+            executor.shutdownNow();
         }
     }
 
+    private Graph getResult(Future<Graph> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    public DegreeAnonymizationMode getDegreeAnonymizationMode() {
+        return degreeAnonymizationMode;
+    }
+
+    public void setDegreeAnonymizationMode(DegreeAnonymizationMode degreeAnonymizationMode) {
+        this.degreeAnonymizationMode = degreeAnonymizationMode;
+    }
+
+    public int getParallelAttempts() {
+        return parallelAttempts;
+    }
+
+    /**
+     * @param parallelAttempts - number of seeds racing on a thread pool, 1 to anonymize on the calling thread
+     */
+    public void setParallelAttempts(int parallelAttempts) {
+        this.parallelAttempts = Math.max(1, parallelAttempts);
+    }
+
+    public RaceResult getRaceResult() {
+        return raceResult;
+    }
+
+    public void setRaceResult(RaceResult raceResult) {
+        this.raceResult = raceResult;
+    }
+
+    public long getRaceDeadlineMillis() {
+        return raceDeadlineMillis;
+    }
+
+    /**
+     * @param raceDeadlineMillis - for FEWEST_EDGES, how long to wait for more results once one was realized
+     */
+    public void setRaceDeadlineMillis(long raceDeadlineMillis) {
+        this.raceDeadlineMillis = raceDeadlineMillis;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @param maxAttempts - attempts (each followed by noise when it fails) before giving up
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+    }
+
+    public long getTimeBudgetMillis() {
+        return timeBudgetMillis;
+    }
+
+    /**
+     * @param timeBudgetMillis - no new attempt is started after this time
+     */
+    public void setTimeBudgetMillis(long timeBudgetMillis) {
+        this.timeBudgetMillis = timeBudgetMillis;
+    }
+
     /**
      * Adding some noise (a random number of edges) because after anonymization it wasn't realized.
      * @param originalGraph
+     * @param degreeVector - the degrees, updated with the new edges
+     * @param random - random choices of the attempt
+     * @return number of edges added
      */
-    private void addNoise(Graph originalGraph) {
-        List<Vertex> vertices = originalGraph.getVertices();
+    private int addNoise(OverlayGraph originalGraph, DegreeVector degreeVector, Random random) {
+        DegreeContext[] vector = degreeVector.getVector();
+        Map<Vertex, Set<Vertex>> vertexToNeighbors = originalGraph.getVertexToNeighbors();
 
-        int edgeAdditions = position.nextInt(NOISE_ADDITION);
+        int added = 0;
+        int edgeAdditions = random.nextInt(NOISE_ADDITION);
         for (int i = 0; i < edgeAdditions; i++) {
-            int size = vertices.size();
-            int xIdx = position.nextInt(size);
-            int yIdx = position.nextInt(size);
-            originalGraph.addEdge(vertices.get(xIdx), vertices.get(yIdx));
+            int size = vector.length;
+            Vertex x = vector[random.nextInt(size)].getVertex();
+            Vertex y = vector[random.nextInt(size)].getVertex();
+            if (!x.equals(y) && !vertexToNeighbors.get(x).contains(y)) {
+                degreeVector.addEdge(x, y);
+                added++;
+            }
         }
+        return added;
     }
 
     /**
@@ -79,6 +312,85 @@ public class KDegree implements IAlgorithm {
         return degreeContexts.toArray(result);
     }
 
+    /**
+     * Probing: the additional vector must be the degree sequence of a simple graph (Erdos-Gallai),
+     * when it is not the degrees of a few random vertices are raised and the vector is anonymized again.
+     * Nothing is added to the graph, so a non realizable vector costs a degree anonymization and not a supergraph pass.
+     *
+     * @param originalDegrees - vector of degrees sorted desc.
+     * @param k               - the anonymization level
+     * @param attempt         - metrics of the current attempt
+     * @param random          - random choices of the attempt
+     * @return the additional vector (degrees to add to the vertices of the returned contexts)
+     */
+    private DegreeContext[] probeDegreeAnonymization(DegreeContext[] originalDegrees, Integer k, AnonymizationStats.Attempt attempt, Random random) {
+        // noisy degrees, with the original degrees kept in the same order
+        DegreeContext[] noisyDegrees = new DegreeContext[originalDegrees.length];
+        DegreeContext[] sourceDegrees = originalDegrees.clone();
+        for (int i = 0; i < originalDegrees.length; i++) {
+            noisyDegrees[i] = new DegreeContext(originalDegrees[i].getVertex(), originalDegrees[i].getDegree());
+        }
+
+        DegreeContext[] anonymizeDegreeVector = null;
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            attempt.setProbes(probe + 1);
+            anonymizeDegreeVector = degreeAnonymization(noisyDegrees, k);
+            createAdditionalDegreeVector(sourceDegrees, anonymizeDegreeVector);
+            if (isRealizable(anonymizeDegreeVector)) {
+                return anonymizeDegreeVector;
+            }
+            addDegreeNoise(noisyDegrees, sourceDegrees, random);
+        }
+        logger.debug(String.format("Additional vector not realizable after %s probes", MAX_PROBES));
+        return anonymizeDegreeVector;
+    }
+
+    /**
+     * Raising the degree of a random number of random vertices by one, the vector stays sorted desc.
+     * @param noisyDegrees - vector of degrees sorted desc.
+     * @param sourceDegrees - the original degrees, reordered along with noisyDegrees
+     * @param random - random choices of the attempt
+     */
+    private void addDegreeNoise(DegreeContext[] noisyDegrees, DegreeContext[] sourceDegrees, Random random) {
+        int size = noisyDegrees.length;
+        int additions = 1 + random.nextInt(NOISE_ADDITION);
+        for (int i = 0; i < additions; i++) {
+            int idx = random.nextInt(size);
+            int degree = noisyDegrees[idx].getDegree();
+            if (degree + 1 >= size) {
+                continue; // already connected to all
+            }
+            // moving it to the head of its run of equal degrees keeps the order
+            int first = firstWithDegree(noisyDegrees, degree, idx);
+            swap(noisyDegrees, idx, first);
+            swap(sourceDegrees, idx, first);
+            noisyDegrees[first].setDegree(degree + 1);
+        }
+    }
+
+    /**
+     * @return the first index (up to idx) of the desc sorted vector with the given degree
+     */
+    private static int firstWithDegree(DegreeContext[] vector, int degree, int idx) {
+        int low = 0;
+        int high = idx;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (vector[middle].getDegree() > degree) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void swap(DegreeContext[] vector, int i, int j) {
+        DegreeContext tmp = vector[i];
+        vector[i] = vector[j];
+        vector[j] = tmp;
+    }
+
     /**
      * step 1
      *
@@ -96,10 +408,64 @@ public class KDegree implements IAlgorithm {
         int size = anonymizedDegrees.length;
 
         //System.out.println("Size: " + size);
-        degreeAnonymizationRecursive(0, size, anonymizedDegrees, k);
+        if (degreeAnonymizationMode == DegreeAnonymizationMode.DYNAMIC_PROGRAMMING) {
+            degreeAnonymizationDynamic(anonymizedDegrees, k);
+        } else {
+            degreeAnonymizationRecursive(0, size, anonymizedDegrees, k);
+        }
         return anonymizedDegrees; // they are now anonymized
     }
 
+    /**
+     * Liu-Terzi dynamic programming over the vector sorted desc, in O(n*k).
+     * cost[i] is the minimal degree addition anonymizing [0..i], with the restricted recurrence
+     * cost[i] = min over max(k-1, i-2k+1) <= t <= i-k of cost[t] + groupCost(t+1, i),
+     * since a group of 2k or more can always be split without adding degrees.
+     * @param vector - vector of degrees sorted desc.
+     * @param k - the K input parameter for indicate the size of group with the same degree
+     */
+    private void degreeAnonymizationDynamic(DegreeContext[] vector, Integer k) {
+        int size = vector.length;
+        long[] prefixSum = new long[size + 1];
+        for (int i = 0; i < size; i++) {
+            prefixSum[i + 1] = prefixSum[i] + vector[i].getDegree();
+        }
+
+        long[] cost = new long[size];
+        int[] lastGroupStart = new int[size];
+        for (int i = 0; i < size; i++) {
+            if (i + 1 < 2 * k) {
+                // too short to be split into two groups
+                cost[i] = groupCost(vector, prefixSum, 0, i);
+                lastGroupStart[i] = 0;
+                continue;
+            }
+            cost[i] = Long.MAX_VALUE;
+            for (int t = Math.max(k - 1, i - 2 * k + 1); t <= i - k; t++) {
+                long c = cost[t] + groupCost(vector, prefixSum, t + 1, i);
+                if (c < cost[i]) {
+                    cost[i] = c;
+                    lastGroupStart[i] = t + 1;
+                }
+            }
+        }
+
+        // set the degrees group by group from the tail
+        int to = size;
+        while (to > 0) {
+            int from = lastGroupStart[to - 1];
+            degreeAnonymizationGroup(from, to, vector);
+            to = from;
+        }
+    }
+
+    /**
+     * @return the degrees to add so all indices between from and to (inclusive) get the degree of [from]
+     */
+    private long groupCost(DegreeContext[] vector, long[] prefixSum, int from, int to) {
+        return (long) vector[from].getDegree() * (to - from + 1) - (prefixSum[to + 1] - prefixSum[from]);
+    }
+
     /**
      * Setting the same degree to all indices in vector between from and to
      * @param from - start index
@@ -148,136 +514,230 @@ public class KDegree implements IAlgorithm {
 
     /**
      * step 2
+     * Building the graph from the additionalDegreeVector: the vertex with the largest remaining degree is connected to
+     * the vertices with the largest remaining degrees it is not connected to yet (Havel-Hakimi order).
+     * The remaining degrees are kept in a bucket queue, so the construction is O(E + E') and not recursive.
      *
      * @param originalGraph          - the original graph
      * @param additionalDegreeVector - the anonymized vector left to fill the graph
+     * @param degreeVector           - the degrees of the graph, updated with the new edges
      * @return constructed graph from the anoynmized vector
      */
-    private Graph supergraph(Graph originalGraph, DegreeContext[] additionalDegreeVector) throws NotRealizedGraphException {
+    private Graph supergraph(OverlayGraph originalGraph, DegreeContext[] additionalDegreeVector, DegreeVector degreeVector) throws NotRealizedGraphException {
+        // check if there exist a degree with minus value in additional vector and throw exception
+        checkMinusDegree(additionalDegreeVector);
+
         // if the sum of additional vector is odd throw illegalGraph
         int sum = sumVector(additionalDegreeVector);
         if (!(sum % 2 == 0)) {
             throw new NotRealizedGraphException("Additional Graph sum is odd");
         }
 
-        return supergraphRecusive(originalGraph, additionalDegreeVector);
+        Map<Vertex, Set<Vertex>> vertexToNeighbors = originalGraph.getVertexToNeighbors();
+        DemandQueue queue = new DemandQueue(additionalDegreeVector);
+        int[] partners = new int[additionalDegreeVector.length];
+
+        while (sum > 0) {
+            // 1. the vertex with the largest remaining degree is done after this round
+            int u = queue.max();
+            int degreeToAdd = queue.getDemand(u);
+            queue.clear(u);
+            Vertex vertex = additionalDegreeVector[u].getVertex();
+            Set<Vertex> vertexNeighbors = vertexToNeighbors.get(vertex);
+
+            // 2. pick the largest remaining degrees which are not neighbors yet. A vertex picked in an earlier
+            // round has no remaining degree, so the new edges never need to be checked
+            int found = 0;
+            for (int idx = queue.last(); idx >= queue.firstPositive() && found < degreeToAdd; idx--) {
+                int v = queue.vertexAt(idx);
+                if (!vertexNeighbors.contains(additionalDegreeVector[v].getVertex())) {
+                    partners[found++] = v;
+                }
+            }
+
+            // 3. connecting them and update the remaining degrees
+            for (int i = 0; i < found; i++) {
+                degreeVector.addEdge(vertex, additionalDegreeVector[partners[i]].getVertex());
+                queue.decrement(partners[i]);
+            }
+            if (found < degreeToAdd) {
+                // the edges added so far are kept, the next attempt starts from them
+                throw new NotRealizedGraphException("No more edges to connect");
+            }
+            sum -= 2 * degreeToAdd;
+        }
+        return originalGraph;
     }
 
     /**
-     * Building the graph from the additionalDegreeVector
-     * @param originalGraph - the original graph we start from
-     * @param additionalDegreeVector - the anonymized vector we would like to build a new graph from.
-     * @return a new anonymized graph build from the additionalDegreeVector
-     * @throws NotRealizedGraphException
+     *
+     * @param additionalDegreeVector - the anonymized vector
+     * @return how many edges we need to find
      */
-    private Graph supergraphRecusive(Graph originalGraph, DegreeContext[] additionalDegreeVector) throws NotRealizedGraphException {
-        // check if there exist a degree with minus value in additional vector and throw exception
-        checkMinusDegree(additionalDegreeVector);
-
-        // check if sum equals zero than stop
-        int sum = sumVector(additionalDegreeVector);
-        if (sum == 0) {
-            return originalGraph;
+    private int sumVector(DegreeContext[] additionalDegreeVector) {
+        int sum = 0;
+        for (int i = 0; i < additionalDegreeVector.length; i++) {
+            sum += additionalDegreeVector[i].getDegree();
         }
-
-        // pick a random DegreeContext with degree > 0
-        DegreeContext degreeContext = nextPositiveDegree(additionalDegreeVector);
-
-        // pick vectors (that are not already connected to vertex) from additional vector and connect new Edge.
-        pickAndConnectEdges(originalGraph, degreeContext, additionalDegreeVector);
-
-        // update additional vector values
-        degreeContext.setDegree(0); // we connected all of them
-
-        // call recursive again
-        return supergraphRecusive(originalGraph, additionalDegreeVector);
+        return sum;
     }
 
     /**
-     * choosing vertexes as getDegree count and add new edge which is not already exist in vertexNeighbors
-     *
-     * @param originalGraph
-     * @param degreeContext
-     * @param additionalDegreeVector
+     * Checking (Erdos-Gallai) that the additional vector is the degree sequence of some simple graph,
+     * otherwise no choice of edges can realize it.
+     * @param additionalDegreeVector - the anonymized vector
+     * @return true if the additional edges may be realized
      */
-    private void pickAndConnectEdges(Graph originalGraph, DegreeContext degreeContext, DegreeContext[] additionalDegreeVector) throws NotRealizedGraphException {
-        int degreeToAdd = degreeContext.getDegree();
-        Map<Vertex, Set<Vertex>> vertexToNeighbors = originalGraph.getVertexToNeighbors();
-        Set<Vertex> vertexNeighbors = vertexToNeighbors.get(degreeContext.getVertex());
-
-        for (int i = 0; i < degreeToAdd; i++) {
-            DegreeContext randomDegreeContext = nextValidVertexToConnect(additionalDegreeVector, degreeContext, vertexNeighbors);
-            Vertex randomVertex = randomDegreeContext.getVertex();
-
-            // connecting this vertex
-            originalGraph.addEdge(degreeContext.getVertex(), randomVertex);
-
-            // update lists
-            vertexNeighbors.add(randomVertex);
-            randomDegreeContext.setDegree(randomDegreeContext.getDegree() - 1); // decrease by 1
+    private boolean isRealizable(DegreeContext[] additionalDegreeVector) {
+        int[] degrees = new int[additionalDegreeVector.length];
+        for (int i = 0; i < degrees.length; i++) {
+            degrees[i] = additionalDegreeVector[i].getDegree();
         }
+        return DegreeUtil.isGraphical(degrees);
     }
 
     /**
-     * @param additionalDegreeVector - the anonymized vector.
-     * @param degreeContext - a vertex we would like to pair to another vertex
-     * @param vertexNeighbors - the map of degree to vertices
-     * @return The next valid vertex to connect an edge to.
+     *  Checking if the vector contain minus degree, which means it could not be realized to a graph.
+     * @param additionalDegreeVector
      * @throws NotRealizedGraphException
      */
-    private DegreeContext nextValidVertexToConnect(DegreeContext[] additionalDegreeVector, DegreeContext degreeContext, Set<Vertex> vertexNeighbors) throws NotRealizedGraphException {
+    private void checkMinusDegree(DegreeContext[] additionalDegreeVector) throws NotRealizedGraphException {
         for (int i = 0; i < additionalDegreeVector.length; i++) {
-            DegreeContext randomVertex = additionalDegreeVector[i];
-            if (randomVertex.getDegree() > 0 && !randomVertex.getVertex().equals(degreeContext.getVertex())) {
-                // check if it's not exist in the neighbors list
-                if (!vertexNeighbors.contains(randomVertex.getVertex())) {
-                    // ok to go
-                    return randomVertex;
-                }
+            if (additionalDegreeVector[i].getDegree() < 0) {
+                throw new NotRealizedGraphException("Additional Graph contain minus degree");
             }
         }
-        throw new NotRealizedGraphException("No more edges to connect");
     }
 
     /**
-     *
-     * @param additionalDegreeVector - the anonymized vector
-     * @return the next vertex with positive degree we need to find pair.
+     * Remaining degrees of the additional vector, bucketed by degree.
+     * The indices are sorted asc by degree and every bucket is a range of them, so the largest degree is at the end
+     * and decrementing a degree is a swap with the head of its bucket.
      */
-    private DegreeContext nextPositiveDegree(DegreeContext[] additionalDegreeVector) {
-        for (int i = 0; i < additionalDegreeVector.length; i++) {
-            DegreeContext degreeContext = additionalDegreeVector[i];
-            if (degreeContext.getDegree() > 0) {
-                return degreeContext;
+    private static class DemandQueue {
+        private final int[] demand;
+        // indices sorted asc by demand
+        private final int[] vertices;
+        private final int[] positions;
+        // bucketStart[d] is the index in vertices of the first with demand d
+        private final int[] bucketStart;
+
+        DemandQueue(DegreeContext[] additionalDegreeVector) {
+            int size = additionalDegreeVector.length;
+            demand = new int[size];
+            vertices = new int[size];
+            positions = new int[size];
+            int maxDemand = 0;
+            for (int v = 0; v < size; v++) {
+                demand[v] = additionalDegreeVector[v].getDegree();
+                maxDemand = Math.max(maxDemand, demand[v]);
             }
 
+            // counting sort
+            bucketStart = new int[maxDemand + 2];
+            for (int v = 0; v < size; v++) {
+                bucketStart[demand[v] + 1]++;
+            }
+            for (int d = 1; d < bucketStart.length; d++) {
+                bucketStart[d] += bucketStart[d - 1];
+            }
+            int[] next = Arrays.copyOf(bucketStart, bucketStart.length);
+            for (int v = 0; v < size; v++) {
+                int idx = next[demand[v]]++;
+                vertices[idx] = v;
+                positions[v] = idx;
+            }
         }
-        return null;
-    }
 
-    /**
-     *
-     * @param additionalDegreeVector - the anonymized vector
-     * @return how many edges we need to find
-     */
-    private int sumVector(DegreeContext[] additionalDegreeVector) {
-        int sum = 0;
-        for (int i = 0; i < additionalDegreeVector.length; i++) {
-            sum += additionalDegreeVector[i].getDegree();
+        int getDemand(int v) {
+            return demand[v];
+        }
+
+        /**
+         * @return the index with the largest demand
+         */
+        int max() {
+            return vertices[vertices.length - 1];
+        }
+
+        int last() {
+            return vertices.length - 1;
+        }
+
+        /**
+         * @return the position of the first index with a positive demand
+         */
+        int firstPositive() {
+            return bucketStart.length > 1 ? bucketStart[1] : vertices.length;
+        }
+
+        int vertexAt(int idx) {
+            return vertices[idx];
+        }
+
+        void decrement(int v) {
+            int d = demand[v];
+            int idx = positions[v];
+            int head = bucketStart[d];
+            int w = vertices[head];
+            vertices[head] = v;
+            positions[v] = head;
+            vertices[idx] = w;
+            positions[w] = idx;
+            bucketStart[d]++;
+            demand[v]--;
+        }
+
+        void clear(int v) {
+            while (demand[v] > 0) {
+                decrement(v);
+            }
         }
-        return sum;
     }
 
     /**
-     *  Checking if the vector contain minus degree, which means it could not be realized to a graph.
-     * @param additionalDegreeVector
-     * @throws NotRealizedGraphException
+     * The vector of degrees sorted desc, kept sorted while edges are added so it is not recomputed between attempts.
      */
-    private void checkMinusDegree(DegreeContext[] additionalDegreeVector) throws NotRealizedGraphException {
-        for (int i = 0; i < additionalDegreeVector.length; i++) {
-            if (additionalDegreeVector[i].getDegree() < 0) {
-                throw new NotRealizedGraphException("Additional Graph contain minus degree");
+    private static class DegreeVector {
+        private final OverlayGraph graph;
+        private final DegreeContext[] vector;
+        // index of a vertex in the graph -> its position in vector
+        private final int[] positions;
+
+        DegreeVector(OverlayGraph graph, DegreeContext[] vector) {
+            this.graph = graph;
+            this.vector = vector;
+            this.positions = new int[graph.getVertices().size()];
+            Arrays.fill(positions, -1);
+            for (int i = 0; i < vector.length; i++) {
+                positions[graph.indexOf(vector[i].getVertex())] = i;
             }
         }
+
+        DegreeContext[] getVector() {
+            return vector;
+        }
+
+        /**
+         * Adding a new edge (between two vertices of the vector) to the graph.
+         */
+        void addEdge(Vertex v0, Vertex v1) {
+            graph.addEdge(v0, v1);
+            increment(graph.indexOf(v0));
+            increment(graph.indexOf(v1));
+        }
+
+        private void increment(int vertexIdx) {
+            int idx = positions[vertexIdx];
+            int degree = vector[idx].getDegree();
+            // moving it to the head of its run of equal degrees keeps the order
+            int first = firstWithDegree(vector, degree, idx);
+            DegreeContext head = vector[first];
+            vector[first] = vector[idx];
+            vector[idx] = head;
+            positions[vertexIdx] = first;
+            positions[graph.indexOf(head.getVertex())] = idx;
+            vector[first].setDegree(degree + 1);
+        }
     }
 }
@@ -1,17 +1,22 @@
 package App.Algorithm;
 
-import App.Common.Utils.DemoDataCreator;
+import App.Model.Edge;
 import App.Model.Graph;
+import App.Model.OverlayGraph;
 import App.Model.Vertex;
-import App.lib.jNauty.StabgraphAlgorithm;
-import org.apache.log4j.BasicConfigurator;
+import App.lib.jNauty.McKayGraphLabelingAlgorithm;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Created by Keinan.Gilad on 10/20/2016.
@@ -20,121 +25,262 @@ public class KSymmetry implements IAlgorithm {
     private static Logger logger = Logger.getLogger(KSymmetry.class);
 
     @Autowired
-    protected StabgraphAlgorithm stabgraphAlgorithm;
+    protected McKayGraphLabelingAlgorithm<Vertex, Edge> mcKayGraphLabelingAlgorithm;
+    // number of threads copying orbits, 1 to copy them on the calling thread
+    private int parallelism = Runtime.getRuntime().availableProcessors();
 
     @Override
     public Graph anonymize(Graph graph, Integer k) {
-        // 1. fetch orbits from the graph by stabgraphAlgorithm algorithm (McKay).
+        // 1. fetch the automorphism orbits from the graph by McKay's algorithm.
         logger.debug("Start to findAutomorphisms");
-        List<List<Vertex>> orbits = stabgraphAlgorithm.getCyclicRepresenatation(graph);
+        List<List<Vertex>> orbits = mcKayGraphLabelingAlgorithm.getCyclicRepresenatation(graph);
         if (orbits == null) {
             logger.debug("No orbits found");
             return graph;
         }
-        List<List<Vertex>> anonymizedOrbits = new ArrayList<>();
         logger.debug(String.format("found %s orbits", orbits.size()));
 
-        // 2. for each orbit -> call ocp until size at least k.
-        for (int i = 0; i < orbits.size(); i++) {
-            logger.debug(String.format("Iteration for orbit %s", i));
+        // the copies are added to an overlay of a frozen snapshot, the given graph is not changed
+        graph = new OverlayGraph(graph.freeze());
 
-            List<Vertex> orbit = orbits.get(i);
-            if (orbit.size() >= k) {
-                /*for (Vertex v: orbit){
-                    logger.debug("Vertex not copied: " + v);
-                }*/
-                logger.debug(String.format("orbit %s size above k", i));
-                anonymizedOrbits.add(orbit);
-                continue;
-            }
-            // orbit size is below k, calling ocp procedure.
-            int copyCounter = 1;
-            while (orbit.size() < k) {
-                logger.debug(String.format("Start orbitCopying for orbit %s", i));
-                orbit = orbitCopying(graph, orbit, copyCounter);
-                copyCounter++;
-                logger.debug(String.format("Done orbitCopying for orbit %s", i));
+        // 2. for each orbit -> call ocp with the number of copies it needs to reach size k.
+        OrbitCopying copying = new OrbitCopying(graph, orbits, k);
+        logger.debug(String.format("Start orbitCopying, %s new vertices", copying.copied.length));
+        ForkJoinPool pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        try {
+            copying.run(pool);
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
             }
-            anonymizedOrbits.add(orbit);
         }
+        logger.debug("Done orbitCopying");
 
         // 3. return the anonymized graph
         logger.debug("return the anonymized graph");
-        graph.setPartitions(anonymizedOrbits);
+        graph.setPartitions(copying.getAnonymizedOrbits());
         return graph;
     }
 
+    public int getParallelism() {
+        return parallelism;
+    }
+
     /**
-     * Orbit copying
-     *
-     * @param graph - the graph
-     * @param orbit - the orbit that will be copied.
+     * @param parallelism - number of threads copying orbits, 1 to copy them on the calling thread
      */
-    private List<Vertex> orbitCopying(Graph graph, List<Vertex> orbit, int copyCounter) {
-        Map<Vertex, Set<Vertex>> vertexToNeighbors = graph.getVertexToNeighbors();
-        List<Vertex> orbitTemp = new ArrayList<>(orbit);
-        // 1. for each vertex in orbit
-        for (Vertex v : orbit) {
-            // 1.1. introduce new vertex into the graph and add to orbit
-            List<Vertex> vertices = graph.getVertices();
-
-            //Vertex v = vertices.get(idx);
-            String name = v.getName();
-            if (name.startsWith("-")) {
-                continue; // not copying tag vertices, only originals.
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Orbit copying of all the orbits below k: copy j of a vertex is named by j tags ("-") and connected to copy j of
+     * its neighbors in the orbit and to its other neighbors themselves. Copying the orbits one after the other, the
+     * copies of an orbit also see the copies of the orbits before it as neighbors, so they are connected to them too.
+     * <p>
+     * Every orbit has a range of the new vertices reserved up front, its copies only depend on the original graph, so
+     * the orbits are copied independently (in parallel given a pool): first the new vertices into their ranges, then
+     * the new edges into a buffer per task. The buffers are appended to the graph in orbit order at the end.
+     */
+    private static class OrbitCopying {
+        private final Graph graph;
+        private final List<List<Vertex>> orbits;
+        private final OrbitIndex index;
+        // number of copies by orbit
+        private final int[] copies;
+        // start of the range of the copies of an orbit in copied, by orbit
+        private final int[] offsets;
+        // copy j of the vertex at position p of orbit i at offsets[i] + j * |orbit i| + p
+        private final Vertex[] copied;
+
+        OrbitCopying(Graph graph, List<List<Vertex>> orbits, int k) {
+            this.graph = graph;
+            this.orbits = orbits;
+            this.index = new OrbitIndex(orbits);
+            this.copies = new int[orbits.size()];
+            this.offsets = new int[orbits.size() + 1];
+            for (int i = 0; i < orbits.size(); i++) {
+                int size = orbits.get(i).size();
+                copies[i] = size >= k ? 0 : (k + size - 1) / size - 1;
+                offsets[i + 1] = offsets[i] + copies[i] * size;
             }
+            this.copied = new Vertex[offsets[orbits.size()]];
+        }
 
-            String vertexTagName = createVertexTagName(name, copyCounter);
-            Vertex vTag = new Vertex(vertexTagName);
-            // add vertex into the graph
-            graph.addVertex(vTag);
+        void run(ForkJoinPool pool) {
+            CopyTask vertices = new CopyTask(this, 0, orbits.size(), false);
+            CopyTask edges = new CopyTask(this, 0, orbits.size(), true);
+            if (pool == null) {
+                vertices.compute();
+                edges.compute();
+            } else {
+                pool.invoke(vertices);
+                pool.invoke(edges);
+            }
+            graph.addAll(Arrays.asList(copied), Collections.<Edge>emptyList());
+            edges.merge(graph);
+        }
 
-            // add vertex into the orbit
-            orbitTemp.add(vTag);//vertices.indexOf(vTag));
+        /**
+         * @return the orbits, each followed by its copies
+         */
+        List<List<Vertex>> getAnonymizedOrbits() {
+            List<List<Vertex>> anonymizedOrbits = new ArrayList<>(orbits.size());
+            for (int i = 0; i < orbits.size(); i++) {
+                if (copies[i] == 0) {
+                    anonymizedOrbits.add(orbits.get(i));
+                    continue;
+                }
+                List<Vertex> anonymizedOrbit = new ArrayList<>(offsets[i + 1] - offsets[i] + orbits.get(i).size());
+                anonymizedOrbit.addAll(orbits.get(i));
+                anonymizedOrbit.addAll(Arrays.asList(copied).subList(offsets[i], offsets[i + 1]));
+                anonymizedOrbits.add(anonymizedOrbit);
+            }
+            return anonymizedOrbits;
+        }
 
-            // 1.2. connect new edges according to orbits.
-            Set<Vertex> vertexNeighbors = vertexToNeighbors.get(v);
-            for (Vertex neighbor : vertexNeighbors) {
-                if (isInSameOrbit(neighbor, vertices, orbit)) {
-                    // in same orbit connecting them by tag
-                    graph.addEdge(vTag, new Vertex(createVertexTagName(neighbor.getName(), copyCounter)));
-                } else {
-                    // in other orbit connecting them regularly
-                    graph.addEdge(vTag, neighbor);
+        /**
+         * @return number of new vertices of the orbits [from, to)
+         */
+        int getWeight(int from, int to) {
+            return offsets[to] - offsets[from];
+        }
+
+        private Vertex getCopy(int orbit, int j, int position) {
+            return copied[offsets[orbit] + j * orbits.get(orbit).size() + position];
+        }
+
+        void createCopies(int i) {
+            String tag = "";
+            int write = offsets[i];
+            for (int j = 0; j < copies[i]; j++) {
+                tag += "-";
+                for (Vertex v : orbits.get(i)) {
+                    copied[write++] = new Vertex(tag + v.getName());
                 }
             }
         }
 
-        return orbitTemp;
+        /**
+         * The edges of the copies of an orbit, an edge inside the orbit is added from its end at the lower position.
+         */
+        void connectCopies(int i, List<Edge> edges) {
+            Map<Vertex, Set<Vertex>> vertexToNeighbors = graph.getVertexToNeighbors();
+            List<Vertex> orbit = orbits.get(i);
+            for (int p = 0; p < orbit.size(); p++) {
+                Set<Vertex> neighbors = vertexToNeighbors.get(orbit.get(p));
+                if (neighbors == null) {
+                    continue;
+                }
+                for (Vertex neighbor : neighbors) {
+                    int other = index.getOrbit(neighbor);
+                    if (other == i) {
+                        // in same orbit connecting them by tag
+                        int q = index.getPosition(neighbor);
+                        if (q < p) {
+                            continue;
+                        }
+                        for (int j = 0; j < copies[i]; j++) {
+                            edges.add(new Edge(getCopy(i, j, p), getCopy(i, j, q)));
+                        }
+                        continue;
+                    }
+                    // in other orbit connecting them regularly, and to its copies if its orbit is copied before
+                    int q = other >= 0 && other < i ? index.getPosition(neighbor) : -1;
+                    for (int j = 0; j < copies[i]; j++) {
+                        Vertex vTag = getCopy(i, j, p);
+                        edges.add(new Edge(vTag, neighbor));
+                        for (int m = 0; q >= 0 && m < copies[other]; m++) {
+                            edges.add(new Edge(vTag, getCopy(other, m, q)));
+                        }
+                    }
+                }
+            }
+        }
     }
 
     /**
-     * @param neighbor - a neighbor we want to check if he part of the orbit
-     * @param vertices - all graph's vertices
-     * @param orbit    - an orbit to check in
-     * @return true if neighbor is part of the orbit, false otherwise.
+     * Copying the orbits [from, to): creating their vertices, or their edges into a buffer of the task.
+     * Large ranges are split between the pool threads.
      */
-    private boolean isInSameOrbit(Vertex neighbor, List<Vertex> vertices, List<Vertex> orbit) {
-        int neighborIdx = vertices.indexOf(neighbor);
-        if (neighborIdx < 0) {
-            return false;
+    private static class CopyTask extends RecursiveAction {
+        // new vertices of a task copied without splitting it
+        private static final int SEQUENTIAL_THRESHOLD = 1 << 12;
+
+        private final OrbitCopying copying;
+        private final int from;
+        private final int to;
+        private final boolean connect;
+        private CopyTask left;
+        private CopyTask right;
+        private List<Edge> edges;
+
+        CopyTask(OrbitCopying copying, int from, int to, boolean connect) {
+            this.copying = copying;
+            this.from = from;
+            this.to = to;
+            this.connect = connect;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1 && copying.getWeight(from, to) > SEQUENTIAL_THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                left = new CopyTask(copying, from, middle, connect);
+                right = new CopyTask(copying, middle, to, connect);
+                invokeAll(left, right);
+                return;
+            }
+            edges = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                if (connect) {
+                    copying.connectCopies(i, edges);
+                } else {
+                    copying.createCopies(i);
+                }
+            }
+        }
+
+        /**
+         * Appending the buffered edges to the graph, in orbit order.
+         */
+        void merge(Graph graph) {
+            if (left != null) {
+                left.merge(graph);
+                right.merge(graph);
+            } else {
+                graph.addAll(Collections.<Vertex>emptyList(), edges);
+            }
         }
-        boolean isContains = orbit.contains(neighborIdx);
-        return isContains;
     }
 
     /**
-     * calculating the tag name
-     *
-     * @param name - vertex name
-     * @return the name with tag (* -1)
+     * Orbit and position in the orbit of the original vertices, O(1) lookups.
      */
-    private String createVertexTagName(String name, int copyCounter) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < copyCounter; i++) {
-            sb.append("-");
+    private static class OrbitIndex {
+        private final Map<Vertex, Integer> orbitOf = new HashMap<>();
+        private final Map<Vertex, Integer> positionOf = new HashMap<>();
+
+        OrbitIndex(List<List<Vertex>> orbits) {
+            for (int i = 0; i < orbits.size(); i++) {
+                List<Vertex> orbit = orbits.get(i);
+                for (int p = 0; p < orbit.size(); p++) {
+                    orbitOf.put(orbit.get(p), i);
+                    positionOf.put(orbit.get(p), p);
+                }
+            }
         }
 
-        return sb.append(name).toString();
+        /**
+         * @return the orbit of v, -1 for a vertex which is not in an orbit (e.g. a copy)
+         */
+        int getOrbit(Vertex v) {
+            Integer orbit = orbitOf.get(v);
+            return orbit == null ? -1 : orbit;
+        }
+
+        int getPosition(Vertex v) {
+            return positionOf.get(v);
+        }
     }
 }
@@ -29,6 +29,67 @@ public class DegreeUtil {
         return result;
     }
 
+    /**
+     * Erdos-Gallai test: a vector of degrees d1 >= ... >= dn is the degree sequence of a simple graph iff
+     * its sum is even and for every k, d1 + ... + dk <= k(k-1) + min(dk+1, k) + ... + min(dn, k).
+     * Runs in O(n log n) with prefix sums.
+     *
+     * @param degrees - the degrees, in any order (the array is not changed)
+     * @return true if there is a simple graph with these degrees
+     */
+    public static boolean isGraphical(int[] degrees) {
+        int n = degrees.length;
+        int[] sorted = new int[n];
+        long sum = 0;
+        for (int i = 0; i < n; i++) {
+            if (degrees[i] < 0 || degrees[i] >= n) {
+                return false;
+            }
+            sum += degrees[i];
+        }
+        if (sum % 2 != 0) {
+            return false;
+        }
+
+        // sort desc
+        int[] ascending = degrees.clone();
+        Arrays.sort(ascending);
+        for (int i = 0; i < n; i++) {
+            sorted[i] = ascending[n - 1 - i];
+        }
+        long[] prefixSum = new long[n + 1];
+        for (int i = 0; i < n; i++) {
+            prefixSum[i + 1] = prefixSum[i] + sorted[i];
+        }
+
+        for (int k = 1; k <= n && sorted[k - 1] > 0; k++) {
+            // the tail [k, n) is split at the first degree smaller than k
+            int split = Math.max(k, firstSmallerThan(sorted, k));
+            long right = (long) k * (k - 1) + (long) k * (split - k) + (prefixSum[n] - prefixSum[split]);
+            if (prefixSum[k] > right) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the first index in the desc sorted array with a value smaller than bound (the length if none)
+     */
+    private static int firstSmallerThan(int[] sorted, int bound) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle] < bound) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
     public static boolean isEdgeBetween(Vertex v1, Vertex v2, Map<Vertex, Set<Vertex>> vertexToNeighbors) {
         return vertexToNeighbors.get(v1).contains(v2); //no need || vertexToNeighbors.get(v2).contains(v1);
     }
@@ -0,0 +1,99 @@
+package App.Common.Utils;
+
+import App.Model.CompactGraph;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Feeding parsed edges into a {@link CompactGraph.Builder}.
+ * <p>
+ * The SNAP ids are mapped to dense vertex ids (in order of first appearance) by an open addressing int map,
+ * so the vertex name String is created once per vertex and not per edge.
+ */
+public class EdgeListGraphBuilder implements EdgeListParser.EdgeHandler {
+    private static final int EMPTY = -1;
+
+    private final CompactGraph.Builder builder;
+    // open addressing: SNAP id -> dense vertex id
+    private int[] keys;
+    private int[] values;
+    private int size;
+
+    public EdgeListGraphBuilder() {
+        this(new CompactGraph.Builder());
+    }
+
+    public EdgeListGraphBuilder(CompactGraph.Builder builder) {
+        this.builder = builder;
+        this.keys = new int[1024];
+        this.values = new int[keys.length];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    @Override
+    public void onEdge(int v0, int v1) {
+        builder.addEdge(vertexId(v0), vertexId(v1));
+    }
+
+    /**
+     * @param label - non-negative SNAP vertex id
+     * @return the dense vertex id, the vertex is registered in the builder when first seen
+     */
+    public int vertexId(int label) {
+        int mask = keys.length - 1;
+        int slot = hash(label) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == label) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int id = builder.addVertex(String.valueOf(label));
+        keys[slot] = label;
+        values[slot] = id;
+        size++;
+        if (size * 2 > keys.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    public CompactGraph build() {
+        return builder.build();
+    }
+
+    /**
+     * @param pool - pool sorting the neighbor rows in parallel
+     * @return the built graph
+     */
+    public CompactGraph build(ForkJoinPool pool) {
+        return builder.build(pool);
+    }
+
+    private void rehash() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new int[keys.length];
+        Arrays.fill(keys, EMPTY);
+
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int hash(int label) {
+        int h = label * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
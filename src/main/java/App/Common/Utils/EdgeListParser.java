@@ -0,0 +1,136 @@
+package App.Common.Utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Parser of SNAP edge lists ("FromNodeId ToNodeId" per line, '#' comment lines).
+ * <p>
+ * Vertex ids are parsed straight from the bytes into ints, no String is created per line or per id.
+ * The input may be handed over in any number of buffers (e.g. memory-mapped windows of a file), a line
+ * split between two buffers is carried over. Columns after the first two are ignored.
+ */
+public class EdgeListParser {
+
+    /**
+     * Receives the parsed edges in file order.
+     */
+    public interface EdgeHandler {
+        void onEdge(int v0, int v1);
+    }
+
+    /**
+     * A line which is not an edge, its number counted from the first line given to the parser.
+     */
+    public static class FormatException extends IOException {
+        private final String reason;
+        private final long line;
+
+        FormatException(String reason, long line) {
+            super(String.format("%s in line %s", reason, line));
+            this.reason = reason;
+            this.line = line;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        /**
+         * @param lines - number of lines before the input of the parser (e.g. before its chunk of the file)
+         * @return the same error with the line counted from the start of the file
+         */
+        public FormatException shift(long lines) {
+            return new FormatException(reason, line + lines);
+        }
+    }
+
+    private final EdgeHandler handler;
+    private long line = 1;
+    // index of the column being read in the current line
+    private int field;
+    private long value;
+    private boolean inNumber;
+    // set on comment lines and after the first two columns were read
+    private boolean skipLine;
+    private int v0;
+
+    public EdgeListParser(EdgeHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Parsing all the remaining bytes of the buffer.
+     *
+     * @param buffer - the next part of the input
+     * @throws IOException if the input is not an edge list of non-negative int ids
+     */
+    public void parse(ByteBuffer buffer) throws IOException {
+        int limit = buffer.limit();
+        for (int i = buffer.position(); i < limit; i++) {
+            byte b = buffer.get(i);
+            if (b == '\n') {
+                endNumber();
+                endLine();
+            } else if (skipLine) {
+                continue;
+            } else if (b >= '0' && b <= '9') {
+                value = value * 10 + (b - '0');
+                if (value > Integer.MAX_VALUE) {
+                    throw new FormatException("Vertex id out of range", line);
+                }
+                inNumber = true;
+            } else if (b == ' ' || b == '\t' || b == '\r') {
+                endNumber();
+            } else if (b == '#' && field == 0 && !inNumber) {
+                skipLine = true;
+            } else {
+                throw new FormatException(String.format("Unexpected character '%s'", (char) b), line);
+            }
+        }
+        buffer.position(limit);
+    }
+
+    /**
+     * Completing the last line in case the input does not end with a new line.
+     *
+     * @throws IOException if the last line is not complete
+     */
+    public void finish() throws IOException {
+        endNumber();
+        if (field > 0) {
+            endLine();
+        }
+    }
+
+    /**
+     * @return number of lines read so far
+     */
+    public long getLine() {
+        return line;
+    }
+
+    private void endNumber() {
+        if (!inNumber) {
+            return;
+        }
+        if (field == 0) {
+            v0 = (int) value;
+        } else {
+            handler.onEdge(v0, (int) value);
+            skipLine = true;
+        }
+        field++;
+        value = 0;
+        inNumber = false;
+    }
+
+    private void endLine() throws IOException {
+        if (field == 1) {
+            throw new FormatException("Missing target vertex", line);
+        }
+        line++;
+        field = 0;
+        skipLine = false;
+    }
+}
@@ -1,10 +1,26 @@
 package App.Common.Utils;
 
+import App.Model.CompactGraph;
 import org.apache.log4j.Logger;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.List;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Created by Keinan.Gilad on 9/16/2016.
@@ -12,24 +28,282 @@ import java.util.List;
 public class FileUtil {
     private Logger logger = Logger.getLogger(FileUtil.class);
 
-    public List<String> loadDataSet(String fileName) {
-        List<String> stringsFromFile = new ArrayList<>();
-        String str = "";
-        try (InputStream is = getClass().getResourceAsStream(fileName)) {
-            BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(is));
-            if (is != null) {
-                while ((str = reader.readLine()) != null) {
-                    stringsFromFile.add(str);
+    // size of the memory-mapped window moving over the file
+    public static final int MAPPED_WINDOW_SIZE = 64 << 20;
+    // buffer size when the file cannot be mapped (e.g. a resource inside a jar)
+    public static final int STREAM_BUFFER_SIZE = 1 << 20;
+    // a SNAP edge row is rarely shorter than this, used to pre-size the edge buffers
+    static final int ESTIMATED_ROW_BYTES = 10;
+    // files from this size on are parsed in parallel
+    public static final int PARALLEL_THRESHOLD = 2 * ParallelEdgeListLoader.MIN_CHUNK_SIZE;
+
+    // number of threads parsing a large file, 1 to always parse sequentially
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    // where graph snapshots are kept, null to always parse the edge lists
+    private File snapshotDirectory = new File(getCacheDirectory(), "snapshots");
+    private boolean verifySnapshots = true;
+
+    /**
+     * Reports the loading progress.
+     */
+    public interface ProgressListener {
+        void onProgress(int percent);
+    }
+
+    /**
+     * @return the directory caching data derived from the data sets, in the home directory of the user so other users
+     * can't plant files in it (as they could in a shared temp directory)
+     */
+    public static File getCacheDirectory() {
+        return new File(System.getProperty("user.home"), ".k-anonymity");
+    }
+
+    /**
+     * Creating a cache directory and its missing parents, accessible by the owner only where the file system has
+     * POSIX permissions.
+     *
+     * @param directory - the directory
+     * @throws IOException if it could not be created
+     */
+    public static void createPrivateDirectories(Path directory) throws IOException {
+        if (Files.isDirectory(directory)) {
+            return;
+        }
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        } else {
+            Files.createDirectories(directory);
+        }
+    }
+
+    /**
+     * Moving a fully written temp file over the target, atomically unless the file system can't, so readers see
+     * the old file or the new one and never a partial one.
+     *
+     * @param temp   - the written file, in the directory of the target
+     * @param target - the file to replace
+     * @throws IOException if the file could not be moved
+     */
+    public static void replaceFile(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Loading a graph, from its binary snapshot when there is an up to date one.
+     * Otherwise the edge list is parsed and a snapshot is written for the next time,
+     * snapshots are keyed by the size and last modified time of the edge list.
+     *
+     * @param fileName - classpath resource or file system path of the edge list
+     * @param listener - progress listener, may be null
+     * @return the loaded graph
+     * @throws IOException if the file is missing or is not an edge list
+     */
+    public CompactGraph loadGraph(String fileName, ProgressListener listener) throws IOException {
+        if (snapshotDirectory == null) {
+            return loadEdgeList(fileName, listener);
+        }
+
+        // 1. cache key of the source
+        URL resource = getClass().getResource(fileName);
+        Path path = resolvePath(fileName, resource);
+        String sourceId;
+        long sourceSize;
+        long sourceModified;
+        if (path != null) {
+            sourceId = path.toAbsolutePath().toString();
+            sourceSize = Files.size(path);
+            sourceModified = Files.getLastModifiedTime(path).toMillis();
+        } else if (resource != null) {
+            URLConnection connection = resource.openConnection();
+            sourceId = resource.toString();
+            sourceSize = connection.getContentLengthLong();
+            sourceModified = connection.getLastModified();
+        } else {
+            throw new FileNotFoundException(fileName);
+        }
+        Path snapshot = new File(snapshotDirectory, String.format("%s-%08x.graph",
+                new File(fileName).getName(), sourceId.hashCode())).toPath();
+
+        // 2. up to date snapshot
+        try {
+            CompactGraph graph = GraphSnapshot.read(snapshot, sourceSize, sourceModified, verifySnapshots);
+            if (graph != null) {
+                logger.debug(String.format("Loaded %s from snapshot %s", fileName, snapshot));
+                if (listener != null) {
+                    listener.onProgress(100);
                 }
+                return graph;
+            }
+        } catch (IOException e) {
+            logger.warn(String.format("Ignoring snapshot %s", snapshot), e);
+        }
+
+        // 3. parse and keep a snapshot for the next time
+        CompactGraph graph = loadEdgeList(fileName, listener);
+        try {
+            GraphSnapshot.write(graph, snapshot, sourceSize, sourceModified);
+        } catch (IOException e) {
+            logger.warn(String.format("Failed to write snapshot %s", snapshot), e);
+        }
+        return graph;
+    }
+
+    /**
+     * Loading an edge list into a {@link CompactGraph}.
+     * The file is memory-mapped (or streamed through a fixed size buffer when it is not on the file system)
+     * and parsed directly from the bytes, so the memory used beyond the graph itself is bounded.
+     * Large mapped files are parsed in parallel chunks, see {@link #setParallelism(int)}.
+     *
+     * @param fileName - classpath resource or file system path of the edge list
+     * @param listener - progress listener, may be null
+     * @return the loaded graph
+     * @throws IOException if the file is missing or is not an edge list
+     */
+    public CompactGraph loadEdgeList(String fileName, ProgressListener listener) throws IOException {
+        URL resource = getClass().getResource(fileName);
+        Path path = resolvePath(fileName, resource);
+        if (path != null) {
+            return loadEdgeList(path, listener);
+        }
+        if (resource == null) {
+            throw new FileNotFoundException(fileName);
+        }
+        return loadEdgeList(resource, listener);
+    }
+
+    private CompactGraph loadEdgeList(Path path, ProgressListener listener) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ProgressReporter progress = new ProgressReporter(size, listener);
+            if (parallelism > 1 && size >= PARALLEL_THRESHOLD) {
+                ForkJoinPool pool = new ForkJoinPool(parallelism);
+                try {
+                    return new ParallelEdgeListLoader(pool).load(channel, progress);
+                } finally {
+                    pool.shutdown();
+                }
+            }
+
+            EdgeListGraphBuilder graphBuilder = createGraphBuilder(size);
+            EdgeListParser parser = new EdgeListParser(graphBuilder);
+            for (long position = 0; position < size; position += MAPPED_WINDOW_SIZE) {
+                long length = Math.min(MAPPED_WINDOW_SIZE, size - position);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                parser.parse(window);
+                progress.update(position + length);
             }
+            parser.finish();
+            return graphBuilder.build();
+        }
+    }
+
+    private CompactGraph loadEdgeList(URL resource, ProgressListener listener) throws IOException {
+        URLConnection connection = resource.openConnection();
+        long size = connection.getContentLengthLong();
+        try (ReadableByteChannel channel = Channels.newChannel(connection.getInputStream())) {
+            EdgeListGraphBuilder graphBuilder = createGraphBuilder(size);
+            EdgeListParser parser = new EdgeListParser(graphBuilder);
+
+            ProgressReporter progress = new ProgressReporter(size, listener);
+            ByteBuffer buffer = ByteBuffer.allocate(STREAM_BUFFER_SIZE);
+            long read = 0;
+            int n;
+            while ((n = channel.read(buffer)) >= 0) {
+                buffer.flip();
+                parser.parse(buffer);
+                buffer.clear();
+                read += n;
+                progress.update(read);
+            }
+            parser.finish();
+            return graphBuilder.build();
+        }
+    }
+
+    private EdgeListGraphBuilder createGraphBuilder(long size) {
+        int expectedEdges = size > 0 ? (int) Math.min(Integer.MAX_VALUE - 8, size / ESTIMATED_ROW_BYTES) : 16;
+        return new EdgeListGraphBuilder(new CompactGraph.Builder(16, expectedEdges));
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param parallelism - number of threads parsing large files, 1 to always parse sequentially
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public File getSnapshotDirectory() {
+        return snapshotDirectory;
+    }
 
-        } catch (FileNotFoundException e) {
-            logger.error(e);
-        } catch (IOException e1) {
-            logger.error(e1);
+    /**
+     * @param snapshotDirectory - where graph snapshots are kept, null to disable snapshots
+     */
+    public void setSnapshotDirectory(File snapshotDirectory) {
+        this.snapshotDirectory = snapshotDirectory;
+    }
+
+    public boolean isVerifySnapshots() {
+        return verifySnapshots;
+    }
+
+    /**
+     * @param verifySnapshots - true to verify the snapshot checksum on every load
+     */
+    public void setVerifySnapshots(boolean verifySnapshots) {
+        this.verifySnapshots = verifySnapshots;
+    }
+
+    /**
+     * @return the file system path of the edge list, or null if it is not a file (e.g. a resource inside a jar)
+     */
+    private Path resolvePath(String fileName, URL resource) {
+        if (resource != null) {
+            if (!"file".equals(resource.getProtocol())) {
+                return null;
+            }
+            try {
+                return Paths.get(resource.toURI());
+            } catch (URISyntaxException e) {
+                logger.error(e);
+                return null;
+            }
+        }
+        Path path = Paths.get(fileName);
+        return Files.isRegularFile(path) ? path : null;
+    }
+
+    /**
+     * Translating bytes read into percents, the listener is called only when the percent grows.
+     * Safe to update from several parsing threads.
+     */
+    static class ProgressReporter {
+        private final long size;
+        private final ProgressListener listener;
+        private int lastPercent = -1;
+
+        ProgressReporter(long size, ProgressListener listener) {
+            this.size = size;
+            this.listener = listener;
         }
 
-        return stringsFromFile;
+        synchronized void update(long bytesRead) {
+            if (listener == null || size <= 0) {
+                return;
+            }
+            int percent = (int) Math.min(100, (bytesRead * 100) / size);
+            if (percent > lastPercent) {
+                lastPercent = percent;
+                listener.onProgress(percent);
+            }
+        }
     }
 }
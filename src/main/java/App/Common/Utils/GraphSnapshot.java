@@ -0,0 +1,249 @@
+package App.Common.Utils;
+
+import App.Model.CompactGraph;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Binary on-disk snapshot of a {@link CompactGraph}, read back through memory mapping.
+ * <p>
+ * Layout (big endian):
+ * <pre>
+ * header:     magic, version, flags, source size, source last modified, vertex count, arc count, dictionary bytes
+ * dictionary: per vertex the name length and its UTF-8 bytes, padded to 4 bytes
+ * offsets:    vertex count + 1 ints
+ * adjacency:  arc count ints
+ * trailer:    CRC32 of dictionary, offsets and adjacency (when FLAG_CHECKSUM is set)
+ * </pre>
+ * The source size and last modified time are the cache key, a snapshot of another version of the source is stale.
+ */
+public class GraphSnapshot {
+    public static final int MAGIC = 0x4B414753; // "KAGS"
+    public static final int VERSION = 1;
+    public static final int FLAG_CHECKSUM = 1;
+    public static final int HEADER_SIZE = 4 + 4 + 4 + 8 + 8 + 4 + 4 + 4;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Writing the graph to a snapshot file, the file is replaced atomically where the file system supports it
+     * (see {@link FileUtil#replaceFile(Path, Path)}).
+     *
+     * @param graph          - the graph
+     * @param snapshot       - the snapshot file
+     * @param sourceSize     - size of the source the graph was loaded from
+     * @param sourceModified - last modified time of the source
+     * @throws IOException if the snapshot could not be written
+     */
+    public static void write(CompactGraph graph, Path snapshot, long sourceSize, long sourceModified) throws IOException {
+        int n = graph.getVertexCount();
+        byte[][] names = new byte[n][];
+        int dictionaryBytes = 0;
+        for (int v = 0; v < n; v++) {
+            names[v] = graph.getVertexName(v).getBytes(StandardCharsets.UTF_8);
+            dictionaryBytes += 4 + names[v].length;
+        }
+        int padding = (4 - dictionaryBytes % 4) % 4;
+        int arcs = n > 0 ? graph.getNeighborsEnd(n - 1) : 0;
+
+        FileUtil.createPrivateDirectories(snapshot.toAbsolutePath().getParent());
+        Path temp = Files.createTempFile(snapshot.toAbsolutePath().getParent(), snapshot.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).putInt(FLAG_CHECKSUM)
+                        .putLong(sourceSize).putLong(sourceModified)
+                        .putInt(n).putInt(arcs)
+                        .putInt(dictionaryBytes + padding);
+                header.flip();
+                writeFully(channel, header);
+
+                ChecksumWriter out = new ChecksumWriter(channel);
+                for (int v = 0; v < n; v++) {
+                    out.putInt(names[v].length);
+                    out.put(names[v]);
+                }
+                out.put(new byte[padding]);
+                for (int v = 0; v < n; v++) {
+                    out.putInt(graph.getNeighborsStart(v));
+                }
+                out.putInt(arcs);
+                for (int v = 0; v < n; v++) {
+                    for (int i = graph.getNeighborsStart(v); i < graph.getNeighborsEnd(v); i++) {
+                        out.putInt(graph.getNeighborAt(i));
+                    }
+                }
+                out.flush();
+
+                ByteBuffer trailer = ByteBuffer.allocate(8);
+                trailer.putLong(out.getChecksum());
+                trailer.flip();
+                writeFully(channel, trailer);
+            }
+            FileUtil.replaceFile(temp, snapshot);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Reading a snapshot file.
+     *
+     * @param snapshot       - the snapshot file
+     * @param sourceSize     - size of the current source
+     * @param sourceModified - last modified time of the current source
+     * @param verifyChecksum - true to verify the checksum (when the snapshot has one)
+     * @return the graph, or null if there is no snapshot or it was taken from another version of the source
+     * @throws IOException if the snapshot is corrupted
+     */
+    public static CompactGraph read(Path snapshot, long sourceSize, long sourceModified, boolean verifyChecksum) throws IOException {
+        if (!Files.isRegularFile(snapshot)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) {
+                throw new IOException("Truncated snapshot " + snapshot);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a graph snapshot " + snapshot);
+            }
+            if (header.getInt() != VERSION) {
+                return null;
+            }
+            int flags = header.getInt();
+            if (header.getLong() != sourceSize || header.getLong() != sourceModified) {
+                return null;
+            }
+            int n = header.getInt();
+            int arcs = header.getInt();
+            int dictionaryBytes = header.getInt();
+
+            boolean hasChecksum = (flags & FLAG_CHECKSUM) != 0;
+            long bodySize = dictionaryBytes + 4L * (n + 1) + 4L * arcs;
+            if (n < 0 || arcs < 0 || dictionaryBytes < 0 || fileSize != HEADER_SIZE + bodySize + (hasChecksum ? 8 : 0)) {
+                throw new IOException("Corrupted snapshot " + snapshot);
+            }
+            if (hasChecksum && verifyChecksum) {
+                long expected = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + bodySize, 8).getLong();
+                if (checksum(channel, HEADER_SIZE, bodySize) != expected) {
+                    throw new IOException("Checksum mismatch in snapshot " + snapshot);
+                }
+            }
+
+            // dictionary
+            long position = HEADER_SIZE;
+            MappedByteBuffer dictionary = channel.map(FileChannel.MapMode.READ_ONLY, position, dictionaryBytes);
+            String[] names = new String[n];
+            byte[] nameBytes = new byte[64];
+            for (int v = 0; v < n; v++) {
+                int length = dictionary.getInt();
+                if (length > nameBytes.length) {
+                    nameBytes = new byte[Math.max(length, nameBytes.length * 2)];
+                }
+                dictionary.get(nameBytes, 0, length);
+                names[v] = new String(nameBytes, 0, length, StandardCharsets.UTF_8);
+            }
+            position += dictionaryBytes;
+
+            // CSR arrays
+            int[] offsets = new int[n + 1];
+            readInts(channel, position, offsets);
+            position += 4L * offsets.length;
+            int[] adjacency = new int[arcs];
+            readInts(channel, position, adjacency);
+
+            try {
+                return CompactGraph.fromCsr(names, offsets, adjacency);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Corrupted snapshot " + snapshot, e);
+            }
+        } catch (RuntimeException e) {
+            // e.g. BufferUnderflowException on a corrupted dictionary
+            throw new IOException("Corrupted snapshot " + snapshot, e);
+        }
+    }
+
+    private static void readInts(FileChannel channel, long position, int[] target) throws IOException {
+        int windowInts = FileUtil.MAPPED_WINDOW_SIZE / 4;
+        for (int from = 0; from < target.length; from += windowInts) {
+            int length = Math.min(windowInts, target.length - from);
+            IntBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position + 4L * from, 4L * length).asIntBuffer();
+            window.get(target, from, length);
+        }
+    }
+
+    private static long checksum(FileChannel channel, long position, long size) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] bytes = new byte[BUFFER_SIZE];
+        for (long offset = 0; offset < size; offset += FileUtil.MAPPED_WINDOW_SIZE) {
+            long length = Math.min(FileUtil.MAPPED_WINDOW_SIZE, size - offset);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position + offset, length);
+            while (window.hasRemaining()) {
+                int chunk = Math.min(bytes.length, window.remaining());
+                window.get(bytes, 0, chunk);
+                crc.update(bytes, 0, chunk);
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Buffered writer computing the CRC32 of everything written through it.
+     */
+    private static class ChecksumWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private final CRC32 crc = new CRC32();
+
+        ChecksumWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(int value) throws IOException {
+            if (buffer.remaining() < 4) {
+                flush();
+            }
+            buffer.putInt(value);
+        }
+
+        void put(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        void flush() throws IOException {
+            crc.update(buffer.array(), 0, buffer.position());
+            buffer.flip();
+            writeFully(channel, buffer);
+            buffer.clear();
+        }
+
+        long getChecksum() {
+            return crc.getValue();
+        }
+    }
+}
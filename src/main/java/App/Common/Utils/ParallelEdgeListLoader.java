@@ -0,0 +1,184 @@
+package App.Common.Utils;
+
+import App.Model.CompactGraph;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parallel mode of {@link FileUtil#loadEdgeList}.
+ * <p>
+ * The file is split into newline-aligned chunks which are memory-mapped and parsed on a fork-join pool,
+ * every chunk into its own primitive buffer of SNAP ids. The buffers are then merged in file order (so the vertex
+ * ids are the same as with the sequential loader) and the neighbor rows are sorted and deduplicated in parallel.
+ * A chunk counts its lines from 1, so a format error is reported with the lines of the chunks before it added.
+ */
+class ParallelEdgeListLoader {
+    // smallest chunk worth a task of its own
+    public static final int MIN_CHUNK_SIZE = 4 << 20;
+    // chunks per thread, so a slow chunk does not hold back the whole pool
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final ForkJoinPool pool;
+    private final int parallelism;
+
+    ParallelEdgeListLoader(ForkJoinPool pool) {
+        this.pool = pool;
+        this.parallelism = pool.getParallelism();
+    }
+
+    CompactGraph load(FileChannel channel, final FileUtil.ProgressReporter progress) throws IOException {
+        long size = channel.size();
+
+        // 1. split into chunks starting at line starts
+        long[] starts = split(channel, size);
+
+        // 2. parse the chunks in parallel
+        final AtomicLong bytesRead = new AtomicLong();
+        List<Callable<IdBuffer>> tasks = new ArrayList<>(starts.length);
+        for (int i = 0; i < starts.length; i++) {
+            final long start = starts[i];
+            final long length = (i + 1 < starts.length ? starts[i + 1] : size) - start;
+            final ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            tasks.add(new Callable<IdBuffer>() {
+                @Override
+                public IdBuffer call() throws IOException {
+                    IdBuffer ids = new IdBuffer((int) (length / FileUtil.ESTIMATED_ROW_BYTES));
+                    EdgeListParser parser = new EdgeListParser(ids);
+                    parser.parse(chunk);
+                    parser.finish();
+                    ids.lines = parser.getLine() - 1;
+                    progress.update(bytesRead.addAndGet(length));
+                    return ids;
+                }
+            });
+        }
+        List<IdBuffer> buffers = new ArrayList<>(starts.length);
+        int edges = 0;
+        long lines = 0;
+        for (Future<IdBuffer> future : pool.invokeAll(tasks)) {
+            IdBuffer ids = getResult(future, lines);
+            buffers.add(ids);
+            edges += ids.size / 2;
+            lines += ids.lines;
+        }
+
+        // 3. merge in file order and build the graph with a parallel sort/dedup of the rows
+        EdgeListGraphBuilder graphBuilder = new EdgeListGraphBuilder(new CompactGraph.Builder(16, edges));
+        for (int i = 0; i < buffers.size(); i++) {
+            IdBuffer ids = buffers.get(i);
+            for (int j = 0; j < ids.size; j += 2) {
+                graphBuilder.onEdge(ids.values[j], ids.values[j + 1]);
+            }
+            buffers.set(i, null); // release the chunk
+        }
+        return graphBuilder.build(pool);
+    }
+
+    /**
+     * @return start positions of the chunks, every chunk but the first starts right after a new line
+     */
+    private long[] split(FileChannel channel, long size) throws IOException {
+        long chunkSize = Math.max(MIN_CHUNK_SIZE, size / ((long) parallelism * CHUNKS_PER_THREAD));
+        chunkSize = Math.min(chunkSize, FileUtil.MAPPED_WINDOW_SIZE);
+
+        List<Long> starts = new ArrayList<>();
+        starts.add(0L);
+        long position = chunkSize;
+        while (position < size) {
+            position = nextLineStart(channel, position, size);
+            if (position < size) {
+                starts.add(position);
+            }
+            position += chunkSize;
+        }
+
+        long[] result = new long[starts.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = starts.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * @return the first line start at or after position
+     */
+    private long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long offset = position - 1;
+        while (offset < size) {
+            buffer.clear();
+            int n = channel.read(buffer, offset);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (buffer.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += n;
+        }
+        return size;
+    }
+
+    /**
+     * @param future - the parsing of a chunk
+     * @param lines  - number of lines in the chunks before it
+     * @return the ids of the chunk
+     * @throws IOException the error of the chunk, unwrapped from the pool's exceptions, with its line in the file
+     */
+    private IdBuffer getResult(Future<IdBuffer> future, long lines) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading", e);
+        } catch (ExecutionException e) {
+            // the pool may wrap the exception of the task in RuntimeExceptions
+            Throwable cause = e.getCause();
+            while (cause != null && !(cause instanceof IOException)) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof EdgeListParser.FormatException) {
+                throw ((EdgeListParser.FormatException) cause).shift(lines);
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Growable buffer of the SNAP ids of one chunk, two ids per edge.
+     */
+    private static class IdBuffer implements EdgeListParser.EdgeHandler {
+        private int[] values;
+        private int size;
+        // lines of the chunk
+        private long lines;
+
+        IdBuffer(int expectedEdges) {
+            values = new int[Math.max(16, expectedEdges * 2)];
+        }
+
+        @Override
+        public void onEdge(int v0, int v1) {
+            if (size + 2 > values.length) {
+                values = Arrays.copyOf(values, values.length + (values.length >> 1) + 2);
+            }
+            values[size++] = v0;
+            values[size++] = v1;
+        }
+    }
+}
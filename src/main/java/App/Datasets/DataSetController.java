@@ -1,11 +1,14 @@
 package App.Datasets;
 
 import App.Common.Utils.FileUtil;
+import App.Model.CompactGraph;
 import App.Model.Graph;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Created by Keinan.Gilad on 9/16/2016.
@@ -26,8 +29,12 @@ public class DataSetController {
     private FileUtil fileUtils;
     private List<String> dataSetsNames = new ArrayList<>();
     private HashMap<String, String> dataSetNameToFileName = new HashMap<>();
-    private HashMap<String, Graph> dataSetToModel = new HashMap<>();
-    private HashMap<String, Integer> dataSetToProgress = new HashMap<>();
+    // frozen snapshots, shared by all the algorithm runs
+    private Map<String, CompactGraph> dataSetToModel = new ConcurrentHashMap<>();
+    // updated by the loading threads
+    private Map<String, Integer> dataSetToProgress = new ConcurrentHashMap<>();
+    // why a data set could not be loaded, it has no model then
+    private Map<String, String> dataSetToError = new ConcurrentHashMap<>();
 
     public DataSetController() {
         addDataSets();
@@ -51,32 +58,26 @@ public class DataSetController {
         return dataSetsNames;
     }
 
-    public void loadDataSet(String dataSet) {
+    public void loadDataSet(final String dataSet) {
         logger.debug("Start load DataSet:" + dataSet);
 
         dataSetToProgress.put(dataSet, 0);
+        dataSetToError.remove(dataSet);
         String fileName = dataSetNameToFileName.get(dataSet);
-        List<String> values = fileUtils.loadDataSet(fileName);
-        int size = values.size();
-        Graph model = new Graph();
-        for (int i = 0; i < size; i++) {
-            String valueRow = values.get(i);
-            // split by spaces
-            String[] valueRowSplits = valueRow.split("\\s+");
-            // taking only the first two (as this is in my data sets)
-            if (valueRowSplits[0].startsWith("#")) {
-                continue;
-            }
-
-            model.addRow(valueRowSplits);
-
-            // done iteration
-            int progress = ((i * 100) / size) + 1;
-            dataSetToProgress.put(dataSet, progress);
-            //logger.debug("DataSet: " + dataSet + " Progress:" + progress);
+        try {
+            CompactGraph model = fileUtils.loadGraph(fileName, new FileUtil.ProgressListener() {
+                @Override
+                public void onProgress(int percent) {
+                    // 100 is reported once the model is available
+                    dataSetToProgress.put(dataSet, Math.min(percent, 99));
+                }
+            });
+            dataSetToModel.put(dataSet, model.freeze());
+        } catch (IOException e) {
+            logger.error(String.format("Failed to load DataSet %s from %s", dataSet, fileName), e);
+            dataSetToError.put(dataSet, String.format("Failed to load %s: %s", dataSet, e.getMessage()));
         }
         dataSetToProgress.put(dataSet, 100);
-        dataSetToModel.put(dataSet, model);
         logger.debug("Done load DataSet:" + dataSet);
     }
 
@@ -84,10 +85,23 @@ public class DataSetController {
         return dataSetToProgress.get(dataSet);
     }
 
-    public Graph getDataSetToModel(String dataSet) {
+    /**
+     * @param dataSet - data set name
+     * @return the frozen graph of the data set, or null if it is not loaded. Algorithms add to an
+     * {@link App.Model.OverlayGraph} of it, so concurrent runs share it without copying.
+     */
+    public CompactGraph getDataSetToModel(String dataSet) {
         return dataSetToModel.get(dataSet);
     }
 
+    /**
+     * @param dataSet - data set name
+     * @return why the data set could not be loaded, or null if it was loaded or is still loading
+     */
+    public String getLoadError(String dataSet) {
+        return dataSetToError.get(dataSet);
+    }
+
     public static Map<Integer, Integer> getDegreeFreq(Collection<Integer> allDegreesWithDuplicates) {
         Iterator<Integer> allDegreesWithDuplicatesIterator = allDegreesWithDuplicates.iterator();
         Set<Integer> degreesSet = new HashSet<>();
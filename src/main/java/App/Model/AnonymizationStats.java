@@ -0,0 +1,147 @@
+package App.Model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Telemetry of a K-Degree anonymization, one entry per attempt (degree anonymization followed by the supergraph).
+ */
+public class AnonymizationStats implements Serializable {
+    private final List<Attempt> attempts = new ArrayList<>();
+    private boolean realized;
+    // seed of the random choices
+    private long seed;
+
+    public void addAttempt(Attempt attempt) {
+        attempts.add(attempt);
+    }
+
+    public List<Attempt> getAttempts() {
+        return Collections.unmodifiableList(attempts);
+    }
+
+    /**
+     * @return false if the attempt or time budget ran out before the graph was anonymized
+     */
+    public boolean isRealized() {
+        return realized;
+    }
+
+    public void setRealized(boolean realized) {
+        this.realized = realized;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @return edges added by all the attempts, noise included
+     */
+    public int getEdgesAdded() {
+        int sum = 0;
+        for (Attempt attempt : attempts) {
+            sum += attempt.getEdgesAdded() + attempt.getNoiseEdges();
+        }
+        return sum;
+    }
+
+    public long getMillis() {
+        long sum = 0;
+        for (Attempt attempt : attempts) {
+            sum += attempt.getDegreeAnonymizationMillis() + attempt.getSupergraphMillis();
+        }
+        return sum;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s after %s attempts, %s edges added in %sms",
+                realized ? "Realized" : "Not realized", attempts.size(), getEdgesAdded(), getMillis());
+    }
+
+    /**
+     * A single attempt.
+     */
+    public static class Attempt implements Serializable {
+        private final int number;
+        // rounds of degree noise until the additional vector was realizable
+        private int probes;
+        private long degreeAnonymizationMillis;
+        private long supergraphMillis;
+        // edges added by the supergraph, also when it failed
+        private int edgesAdded;
+        // random edges added after a failure
+        private int noiseEdges;
+        // null if the attempt succeeded
+        private String failure;
+
+        public Attempt(int number) {
+            this.number = number;
+        }
+
+        public int getNumber() {
+            return number;
+        }
+
+        public int getProbes() {
+            return probes;
+        }
+
+        public void setProbes(int probes) {
+            this.probes = probes;
+        }
+
+        public long getDegreeAnonymizationMillis() {
+            return degreeAnonymizationMillis;
+        }
+
+        public void setDegreeAnonymizationMillis(long degreeAnonymizationMillis) {
+            this.degreeAnonymizationMillis = degreeAnonymizationMillis;
+        }
+
+        public long getSupergraphMillis() {
+            return supergraphMillis;
+        }
+
+        public void setSupergraphMillis(long supergraphMillis) {
+            this.supergraphMillis = supergraphMillis;
+        }
+
+        public int getEdgesAdded() {
+            return edgesAdded;
+        }
+
+        public void setEdgesAdded(int edgesAdded) {
+            this.edgesAdded = edgesAdded;
+        }
+
+        public int getNoiseEdges() {
+            return noiseEdges;
+        }
+
+        public void setNoiseEdges(int noiseEdges) {
+            this.noiseEdges = noiseEdges;
+        }
+
+        public String getFailure() {
+            return failure;
+        }
+
+        public void setFailure(String failure) {
+            this.failure = failure;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("#%s: %s probes (%sms), %s edges (%sms), %s noise edges%s", number, probes,
+                    degreeAnonymizationMillis, edgesAdded, supergraphMillis, noiseEdges, failure == null ? "" : ", " + failure);
+        }
+    }
+}
@@ -0,0 +1,653 @@
+package App.Model;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Compressed-sparse-row (CSR) representation of an undirected graph.
+ * <p>
+ * Vertices are identified by dense int ids (0..n-1). The neighbors of vertex {@code i} are kept sorted in
+ * {@code adjacency[offsets[i]..offsets[i+1])} and names are resolved through an id&lt;-&gt;name dictionary, so a
+ * graph costs two ints per edge instead of the hash entries and {@link Edge} objects used by {@link Graph}.
+ * <p>
+ * The graph is read only. The {@link Graph} accessors are served by lightweight views over the arrays so existing
+ * algorithms can consume it unchanged, structural mutations throw {@link UnsupportedOperationException} and
+ * algorithms that need to add vertices or edges should work on {@link #asMutableGraph()}, an overlay which leaves
+ * this graph unchanged.
+ * <p>
+ * A frozen graph ({@link #freeze()}) has no setters either, so it is an immutable snapshot which any number of
+ * threads and algorithm runs may read at the same time without copying it.
+ */
+public class CompactGraph extends Graph {
+    public static final String READ_ONLY_MESSAGE = "CompactGraph is read only";
+    public static final String FROZEN_MESSAGE = "CompactGraph is frozen";
+
+    private final String[] names;
+    private final int[] offsets;
+    private final int[] adjacency;
+    private final int edgeCount;
+    private final HashMap<String, Integer> nameToId;
+    private final boolean frozen;
+
+    private CompactGraph(String[] names, int[] offsets, int[] adjacency) {
+        this.names = names;
+        this.offsets = offsets;
+        this.adjacency = adjacency;
+        this.frozen = false;
+
+        // self loops are kept once in their own row, every other edge appears in both rows.
+        int selfLoops = 0;
+        for (int v = 0; v < names.length; v++) {
+            if (isEdgeBetween(v, v)) {
+                selfLoops++;
+            }
+        }
+        this.edgeCount = (adjacency.length - selfLoops) / 2 + selfLoops;
+
+        this.nameToId = new HashMap<>(capacityFor(names.length));
+        for (int v = 0; v < names.length; v++) {
+            nameToId.put(names[v], v);
+        }
+    }
+
+    /**
+     * Frozen snapshot of a graph, sharing its arrays (they are never written after the graph is built) and keeping
+     * the partitions and statistics set before freezing.
+     */
+    private CompactGraph(CompactGraph graph) {
+        this.names = graph.names;
+        this.offsets = graph.offsets;
+        this.adjacency = graph.adjacency;
+        this.edgeCount = graph.edgeCount;
+        this.nameToId = graph.nameToId;
+        this.frozen = true;
+        super.setPartitions(graph.getPartitions());
+        super.setAnonymizationStats(graph.getAnonymizationStats());
+    }
+
+    /**
+     * Wrapping CSR arrays (e.g. read from a snapshot file), the arrays are owned by the graph afterwards.
+     *
+     * @param names     - vertex names by id
+     * @param offsets   - row offsets, names.length + 1 entries
+     * @param adjacency - neighbor rows, every row sorted without duplicates
+     * @return the graph
+     * @throws IllegalArgumentException if the arrays do not describe a valid CSR graph
+     */
+    public static CompactGraph fromCsr(String[] names, int[] offsets, int[] adjacency) {
+        int n = names.length;
+        if (offsets.length != n + 1 || offsets[0] != 0 || offsets[n] != adjacency.length) {
+            throw new IllegalArgumentException("Offsets do not match the adjacency array");
+        }
+        for (int v = 0; v < n; v++) {
+            if (offsets[v] > offsets[v + 1]) {
+                throw new IllegalArgumentException(String.format("Negative degree for vertex %s", v));
+            }
+            for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                int u = adjacency[i];
+                if (u < 0 || u >= n || (i > offsets[v] && u <= adjacency[i - 1])) {
+                    throw new IllegalArgumentException(String.format("Invalid neighbor row for vertex %s", v));
+                }
+            }
+        }
+        return new CompactGraph(names, offsets, adjacency);
+    }
+
+    /**
+     * @return number of vertices (ids are 0..getVertexCount()-1)
+     */
+    public int getVertexCount() {
+        return names.length;
+    }
+
+    /**
+     * @return number of undirected edges
+     */
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    public int getDegree(int v) {
+        return offsets[v + 1] - offsets[v];
+    }
+
+    /**
+     * @param v - vertex id
+     * @return index of the first neighbor of v, to be read by {@link #getNeighborAt(int)}
+     */
+    public int getNeighborsStart(int v) {
+        return offsets[v];
+    }
+
+    /**
+     * @param v - vertex id
+     * @return index after the last neighbor of v
+     */
+    public int getNeighborsEnd(int v) {
+        return offsets[v + 1];
+    }
+
+    /**
+     * @param idx - index between getNeighborsStart(v) and getNeighborsEnd(v)
+     * @return the neighbor id stored at this index
+     */
+    public int getNeighborAt(int idx) {
+        return adjacency[idx];
+    }
+
+    public boolean isEdgeBetween(int v0, int v1) {
+        return Arrays.binarySearch(adjacency, offsets[v0], offsets[v0 + 1], v1) >= 0;
+    }
+
+    public String getVertexName(int v) {
+        return names[v];
+    }
+
+    public Vertex getVertex(int v) {
+        return new Vertex(names[v]);
+    }
+
+    /**
+     * @param name - vertex name
+     * @return the vertex id, or -1 if there is no such vertex
+     */
+    public int indexOf(String name) {
+        Integer id = nameToId.get(name);
+        return id == null ? -1 : id;
+    }
+
+    @Override
+    public int indexOf(Vertex v) {
+        return indexOf(v.getName());
+    }
+
+    private int indexOfVertex(Object o) {
+        return o instanceof Vertex ? indexOf(((Vertex) o).getName()) : -1;
+    }
+
+    @Override
+    public void addRow(String[] valueRowSplits) {
+        throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+    }
+
+    @Override
+    public void addVertex(Vertex v) {
+        throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+    }
+
+    @Override
+    public void addEdge(Vertex v0, Vertex v1) {
+        throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+    }
+
+    @Override
+    public Map<Vertex, Set<Vertex>> getVertexToNeighbors() {
+        return new NeighborsMapView();
+    }
+
+    @Override
+    public Set<Edge> getEdges() {
+        return new EdgesView();
+    }
+
+    @Override
+    public List<Vertex> getVertices() {
+        return new VerticesView();
+    }
+
+    @Override
+    public CompactGraph toCompactGraph() {
+        return this;
+    }
+
+    /**
+     * @return this graph if it is frozen, else a frozen snapshot sharing its arrays, in O(1)
+     */
+    @Override
+    public CompactGraph freeze() {
+        return frozen ? this : new CompactGraph(this);
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    @Override
+    public void setPartitions(List<List<Vertex>> partitions) {
+        if (frozen) {
+            throw new UnsupportedOperationException(FROZEN_MESSAGE);
+        }
+        super.setPartitions(partitions);
+    }
+
+    @Override
+    public void setAnonymizationStats(AnonymizationStats anonymizationStats) {
+        if (frozen) {
+            throw new UnsupportedOperationException(FROZEN_MESSAGE);
+        }
+        super.setAnonymizationStats(anonymizationStats);
+    }
+
+    /**
+     * @return 64 bit hash of the names by id and the neighbor rows, the key of results computed for this graph
+     */
+    public long fingerprint() {
+        long h = 0xCBF29CE484222325L;
+        for (int v = 0; v < names.length; v++) {
+            h = (h ^ names[v].hashCode()) * 0x100000001B3L;
+            h = (h ^ (offsets[v + 1] - offsets[v])) * 0x100000001B3L;
+            for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                h = (h ^ adjacency[i]) * 0x100000001B3L;
+            }
+        }
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * @return a new mutable {@link Graph} with the same vertices (in id order) and edges.
+     */
+    public Graph toGraph() {
+        Graph graph = new Graph(names.length, edgeCount);
+        for (int v = 0; v < names.length; v++) {
+            graph.addVertex(getVertex(v));
+        }
+        for (int v = 0; v < names.length; v++) {
+            Vertex vertex = getVertex(v);
+            for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                int u = adjacency[i];
+                if (u >= v) {
+                    graph.addEdge(vertex, getVertex(u));
+                }
+            }
+        }
+        graph.setPartitions(getPartitions());
+        graph.setAnonymizationStats(getAnonymizationStats());
+        return graph;
+    }
+
+    /**
+     * @return a new {@link OverlayGraph} over this graph, added vertices and edges go to its delta
+     */
+    @Override
+    public Graph asMutableGraph() {
+        return new OverlayGraph(this);
+    }
+
+    /**
+     * Collects vertices and edges by dense id and builds a {@link CompactGraph}.
+     * Duplicate edges (in either direction) are removed when the graph is built.
+     */
+    public static class Builder {
+        private final List<String> names;
+        private final HashMap<String, Integer> nameToId;
+        private int[] sources;
+        private int[] targets;
+        private int size;
+
+        public Builder() {
+            this(16, 16);
+        }
+
+        /**
+         * @param expectedVertices - expected number of vertices, used to pre-size the dictionary
+         * @param expectedEdges    - expected number of edges, used to pre-size the edge buffers
+         */
+        public Builder(int expectedVertices, int expectedEdges) {
+            names = new ArrayList<>(expectedVertices);
+            nameToId = new HashMap<>(capacityFor(expectedVertices));
+            sources = new int[Math.max(expectedEdges, 16)];
+            targets = new int[sources.length];
+        }
+
+        /**
+         * @param name - vertex name
+         * @return the id of the vertex, a new id is assigned to names not seen before
+         */
+        public int addVertex(String name) {
+            Integer id = nameToId.get(name);
+            if (id == null) {
+                id = names.size();
+                names.add(name);
+                nameToId.put(name, id);
+            }
+            return id;
+        }
+
+        public int getVertexCount() {
+            return names.size();
+        }
+
+        public void addEdge(String name0, String name1) {
+            addEdge(addVertex(name0), addVertex(name1));
+        }
+
+        /**
+         * @param v0 - id returned by {@link #addVertex(String)}
+         * @param v1 - id returned by {@link #addVertex(String)}
+         */
+        public void addEdge(int v0, int v1) {
+            if (size == sources.length) {
+                int capacity = sources.length + (sources.length >> 1);
+                sources = Arrays.copyOf(sources, capacity);
+                targets = Arrays.copyOf(targets, capacity);
+            }
+            sources[size] = v0;
+            targets[size] = v1;
+            size++;
+        }
+
+        public CompactGraph build() {
+            return build(null);
+        }
+
+        /**
+         * @param pool - pool sorting the neighbor rows in parallel, null to sort them in the calling thread
+         * @return the built graph
+         */
+        public CompactGraph build(ForkJoinPool pool) {
+            int n = names.size();
+
+            // 1. count the degree of every vertex (self loops are stored once)
+            int[] offsets = new int[n + 1];
+            for (int i = 0; i < size; i++) {
+                offsets[sources[i] + 1]++;
+                if (sources[i] != targets[i]) {
+                    offsets[targets[i] + 1]++;
+                }
+            }
+            for (int v = 0; v < n; v++) {
+                offsets[v + 1] += offsets[v];
+            }
+
+            // 2. scatter the edges into their rows
+            int[] adjacency = new int[offsets[n]];
+            int[] cursor = Arrays.copyOf(offsets, n);
+            for (int i = 0; i < size; i++) {
+                int v0 = sources[i];
+                int v1 = targets[i];
+                adjacency[cursor[v0]++] = v1;
+                if (v0 != v1) {
+                    adjacency[cursor[v1]++] = v0;
+                }
+            }
+
+            // 3. sort every row and drop duplicate edges
+            int[] rowSizes = cursor;
+            SortRowsTask sortRows = new SortRowsTask(adjacency, offsets, rowSizes, 0, n);
+            if (pool == null) {
+                sortRows.compute();
+            } else {
+                pool.invoke(sortRows);
+            }
+
+            // 4. compact the rows in place
+            int write = 0;
+            for (int v = 0; v < n; v++) {
+                int start = offsets[v];
+                offsets[v] = write;
+                System.arraycopy(adjacency, start, adjacency, write, rowSizes[v]);
+                write += rowSizes[v];
+            }
+            offsets[n] = write;
+            if (write < adjacency.length) {
+                adjacency = Arrays.copyOf(adjacency, write);
+            }
+
+            return new CompactGraph(names.toArray(new String[n]), offsets, adjacency);
+        }
+    }
+
+    /**
+     * Sorting the rows of the vertices [from, to) and removing duplicates at the head of every row,
+     * the number of distinct neighbors is written to rowSizes. Large ranges are split between the pool threads.
+     */
+    private static class SortRowsTask extends RecursiveAction {
+        private static final int SEQUENTIAL_THRESHOLD = 1 << 16;
+
+        private final int[] adjacency;
+        private final int[] offsets;
+        private final int[] rowSizes;
+        private final int from;
+        private final int to;
+
+        SortRowsTask(int[] adjacency, int[] offsets, int[] rowSizes, int from, int to) {
+            this.adjacency = adjacency;
+            this.offsets = offsets;
+            this.rowSizes = rowSizes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from < 2 || offsets[to] - offsets[from] <= SEQUENTIAL_THRESHOLD) {
+                for (int v = from; v < to; v++) {
+                    int start = offsets[v];
+                    int end = offsets[v + 1];
+                    Arrays.sort(adjacency, start, end);
+                    int write = start;
+                    for (int i = start; i < end; i++) {
+                        if (i == start || adjacency[i] != adjacency[i - 1]) {
+                            adjacency[write++] = adjacency[i];
+                        }
+                    }
+                    rowSizes[v] = write - start;
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new SortRowsTask(adjacency, offsets, rowSizes, from, middle),
+                    new SortRowsTask(adjacency, offsets, rowSizes, middle, to));
+        }
+    }
+
+    private class VerticesView extends AbstractList<Vertex> implements RandomAccess {
+        @Override
+        public Vertex get(int index) {
+            return getVertex(index);
+        }
+
+        @Override
+        public int size() {
+            return names.length;
+        }
+
+        @Override
+        public int indexOf(Object o) {
+            return indexOfVertex(o);
+        }
+
+        @Override
+        public int lastIndexOf(Object o) {
+            return indexOfVertex(o);
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return indexOfVertex(o) >= 0;
+        }
+    }
+
+    private class NeighborsView extends AbstractSet<Vertex> {
+        private final int v;
+
+        NeighborsView(int v) {
+            this.v = v;
+        }
+
+        @Override
+        public Iterator<Vertex> iterator() {
+            return new Iterator<Vertex>() {
+                private int idx = offsets[v];
+
+                @Override
+                public boolean hasNext() {
+                    return idx < offsets[v + 1];
+                }
+
+                @Override
+                public Vertex next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return getVertex(adjacency[idx++]);
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return getDegree(v);
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            int u = indexOfVertex(o);
+            return u >= 0 && isEdgeBetween(v, u);
+        }
+    }
+
+    private class NeighborsMapView extends AbstractMap<Vertex, Set<Vertex>> {
+        @Override
+        public Set<Vertex> get(Object key) {
+            int v = indexOfVertex(key);
+            return v < 0 ? null : new NeighborsView(v);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return indexOfVertex(key) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return names.length;
+        }
+
+        @Override
+        public Set<Vertex> keySet() {
+            return new AbstractSet<Vertex>() {
+                @Override
+                public Iterator<Vertex> iterator() {
+                    return getVertices().iterator();
+                }
+
+                @Override
+                public int size() {
+                    return names.length;
+                }
+
+                @Override
+                public boolean contains(Object o) {
+                    return indexOfVertex(o) >= 0;
+                }
+            };
+        }
+
+        @Override
+        public Set<Entry<Vertex, Set<Vertex>>> entrySet() {
+            return new AbstractSet<Entry<Vertex, Set<Vertex>>>() {
+                @Override
+                public Iterator<Entry<Vertex, Set<Vertex>>> iterator() {
+                    return new Iterator<Entry<Vertex, Set<Vertex>>>() {
+                        private int v = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return v < names.length;
+                        }
+
+                        @Override
+                        public Entry<Vertex, Set<Vertex>> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            Set<Vertex> neighbors = new NeighborsView(v);
+                            return new SimpleImmutableEntry<>(getVertex(v++), neighbors);
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return names.length;
+                }
+            };
+        }
+    }
+
+    private class EdgesView extends AbstractSet<Edge> {
+        @Override
+        public Iterator<Edge> iterator() {
+            return new Iterator<Edge>() {
+                private int v = 0;
+                private int idx = nextIndex(0, offsets[0]);
+
+                /**
+                 * @return the next adjacency index (from idx on) holding an edge v-u with u >= v, moving v along.
+                 */
+                private int nextIndex(int from, int idx) {
+                    v = from;
+                    while (v < names.length) {
+                        int end = offsets[v + 1];
+                        while (idx < end && adjacency[idx] < v) {
+                            idx++;
+                        }
+                        if (idx < end) {
+                            return idx;
+                        }
+                        v++;
+                    }
+                    return idx;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return v < names.length;
+                }
+
+                @Override
+                public Edge next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    Edge edge = new Edge(getVertex(v), getVertex(adjacency[idx]));
+                    idx = nextIndex(v, idx + 1);
+                    return edge;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException(READ_ONLY_MESSAGE);
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return edgeCount;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Edge)) {
+                return false;
+            }
+            Edge edge = (Edge) o;
+            int v0 = indexOfVertex(edge.getV0());
+            int v1 = indexOfVertex(edge.getV1());
+            return v0 >= 0 && v1 >= 0 && isEdgeBetween(v0, v1);
+        }
+    }
+}
@@ -10,22 +10,42 @@ public class Graph implements Serializable {
 
     private Set<Edge> edges;
     private List<Vertex> vertices;
+    // vertex name -> index in vertices
+    private Map<String, Integer> vertexToIndex;
     private Map<Vertex, Set<Vertex>> vertexToNeighbors;
     // relevant for K-Symmetry
     private List<List<Vertex>> partitions;
+    // relevant for K-Degree
+    private AnonymizationStats anonymizationStats;
 
     public Graph() {
-        edges = new HashSet<>();
-        vertices = new ArrayList<>();
-        vertexToNeighbors = new HashMap<>();
+        this(16, 16);
     }
 
-    public void addRow(String[] valueRowSplits) {
-        Vertex v0 = new Vertex(valueRowSplits[0]);
-        Vertex v1 = new Vertex(valueRowSplits[1]);
+    /**
+     * Bulk-load constructor, the backing collections are allocated once for the expected sizes.
+     *
+     * @param expectedVertices - expected number of vertices
+     * @param expectedEdges    - expected number of edges
+     */
+    public Graph(int expectedVertices, int expectedEdges) {
+        edges = new HashSet<>(capacityFor(expectedEdges));
+        vertices = new ArrayList<>(expectedVertices);
+        vertexToIndex = new HashMap<>(capacityFor(expectedVertices));
+        vertexToNeighbors = new HashMap<>(capacityFor(expectedVertices));
+    }
 
-        addVertex(v0);
-        addVertex(v1);
+    /**
+     * @param size - expected number of entries
+     * @return initial capacity of a hash collection holding size entries without rehashing
+     */
+    static int capacityFor(int size) {
+        return (int) (size / 0.75f) + 1;
+    }
+
+    public void addRow(String[] valueRowSplits) {
+        Vertex v0 = vertices.get(addVertexIndex(new Vertex(valueRowSplits[0])));
+        Vertex v1 = vertices.get(addVertexIndex(new Vertex(valueRowSplits[1])));
 
         edges.add(new Edge(v0, v1));
 
@@ -34,9 +54,32 @@ public class Graph implements Serializable {
     }
 
     public void addVertex(Vertex v) {
-        if (!vertices.contains(v)) {
+        addVertexIndex(v);
+    }
+
+    /**
+     * Registering the vertex if it is new, in O(1).
+     *
+     * @param v - the vertex
+     * @return the index of the vertex in the vertices list
+     */
+    private int addVertexIndex(Vertex v) {
+        Integer idx = vertexToIndex.get(v.getName());
+        if (idx == null) {
+            idx = vertices.size();
+            vertexToIndex.put(v.getName(), idx);
             vertices.add(v);
         }
+        return idx;
+    }
+
+    /**
+     * @param v - a vertex
+     * @return the index of v in {@link #getVertices()}, or -1 if v is not part of the graph
+     */
+    public int indexOf(Vertex v) {
+        Integer idx = vertexToIndex.get(v.getName());
+        return idx == null ? -1 : idx;
     }
 
     private void updateNeightbors(Vertex v0, Vertex v1) {
@@ -48,18 +91,34 @@ public class Graph implements Serializable {
         Set<Vertex> vertices = vertexToNeighbors.get(v0);
         if (vertices == null) {
             vertices = new HashSet<Vertex>();
+            vertexToNeighbors.put(v0, vertices);
         }
         vertices.add(v1);
-        vertexToNeighbors.put(v0, vertices);
     }
 
     public void addEdge(Vertex v0, Vertex v1) {
+        v0 = vertices.get(addVertexIndex(v0));
+        v1 = vertices.get(addVertexIndex(v1));
         edges.add(new Edge(v0, v1));
-        addVertex(v0);
-        addVertex(v1);
         updateNeightbors(v0, v1);
     }
 
+    /**
+     * Appending vertices and edges in bulk, e.g. all the copies of an orbit, without looking the endpoints up.
+     *
+     * @param newVertices - vertices which are not part of the graph yet, registered in order
+     * @param newEdges    - edges whose endpoints are vertices of the graph or of newVertices
+     */
+    public void addAll(List<Vertex> newVertices, List<Edge> newEdges) {
+        for (Vertex v : newVertices) {
+            addVertexIndex(v);
+        }
+        for (Edge e : newEdges) {
+            edges.add(e);
+            updateNeightbors(e.getV0(), e.getV1());
+        }
+    }
+
     public Map<Vertex, Set<Vertex>> getVertexToNeighbors() {
         return vertexToNeighbors;
     }
@@ -79,4 +138,45 @@ public class Graph implements Serializable {
     public List<List<Vertex>> getPartitions() {
         return partitions;
     }
+
+    public void setAnonymizationStats(AnonymizationStats anonymizationStats) {
+        this.anonymizationStats = anonymizationStats;
+    }
+
+    public AnonymizationStats getAnonymizationStats() {
+        return anonymizationStats;
+    }
+
+    /**
+     * @return a compressed-sparse-row copy of this graph, vertex ids follow the order of {@link #getVertices()}.
+     */
+    public CompactGraph toCompactGraph() {
+        CompactGraph.Builder builder = new CompactGraph.Builder(vertices.size(), edges.size());
+        for (Vertex v : vertices) {
+            builder.addVertex(v.getName());
+        }
+        for (Edge e : edges) {
+            builder.addEdge(indexOf(e.getV0()), indexOf(e.getV1()));
+        }
+        CompactGraph compactGraph = builder.build();
+        compactGraph.setPartitions(partitions);
+        compactGraph.setAnonymizationStats(anonymizationStats);
+        return compactGraph;
+    }
+
+    /**
+     * @return an immutable snapshot of the vertices and edges, safe to share between threads and algorithm runs.
+     * Vertices and edges are added to it through an {@link OverlayGraph}, which may be frozen again.
+     */
+    public CompactGraph freeze() {
+        return toCompactGraph().freeze();
+    }
+
+    /**
+     * @return a graph algorithms may add vertices and edges to: this graph itself, or an {@link OverlayGraph}
+     * for read only implementations such as {@link CompactGraph}.
+     */
+    public Graph asMutableGraph() {
+        return this;
+    }
 }
@@ -0,0 +1,432 @@
+package App.Model;
+
+import java.util.*;
+
+/**
+ * Copy-on-write view of a {@link CompactGraph}: the read only base plus an append-only delta of added vertices and
+ * edges.
+ * <p>
+ * Algorithms add to the delta only, so running one costs the size of its output instead of a copy of the data set,
+ * and the base may be shared by any number of overlays. The {@link Graph} accessors read through both: the ids of
+ * the base vertices are kept and the added vertices follow them in the order they were added. The delta is also
+ * available on its own by {@link #getDelta()}.
+ * <p>
+ * This is the builder of the next snapshot: {@link #freeze()} merges the delta into a new frozen graph.
+ */
+public class OverlayGraph extends Graph {
+    private final CompactGraph base;
+    private final int baseCount;
+    // added vertices, the id of the i-th one is baseCount + i
+    private final List<Vertex> addedVertices = new ArrayList<>();
+    private final Map<String, Integer> addedToId = new HashMap<>();
+    private final List<Edge> addedEdges = new ArrayList<>();
+    // vertex id -> neighbors through added edges
+    private final Map<Integer, Set<Vertex>> addedNeighbors = new HashMap<>();
+
+    /**
+     * @param base - the graph to add to, not changed
+     */
+    public OverlayGraph(CompactGraph base) {
+        this.base = base;
+        this.baseCount = base.getVertexCount();
+        setPartitions(base.getPartitions());
+        setAnonymizationStats(base.getAnonymizationStats());
+    }
+
+    public CompactGraph getBase() {
+        return base;
+    }
+
+    /**
+     * @return the vertices added to the base, in order, must not be changed
+     */
+    public List<Vertex> getAddedVertices() {
+        return Collections.unmodifiableList(addedVertices);
+    }
+
+    /**
+     * @return the edges added to the base, in order, must not be changed
+     */
+    public List<Edge> getAddedEdges() {
+        return Collections.unmodifiableList(addedEdges);
+    }
+
+    /**
+     * @return a new graph of the delta only: the added vertices, then the base vertices the added edges touch
+     */
+    public Graph getDelta() {
+        Graph delta = new Graph(addedVertices.size(), addedEdges.size());
+        for (Vertex v : addedVertices) {
+            delta.addVertex(v);
+        }
+        for (Edge e : addedEdges) {
+            delta.addEdge(e.getV0(), e.getV1());
+        }
+        return delta;
+    }
+
+    /**
+     * @return number of vertices, base and added
+     */
+    public int getVertexCount() {
+        return baseCount + addedVertices.size();
+    }
+
+    /**
+     * @param name - vertex name
+     * @return the vertex id, or -1 if there is no such vertex
+     */
+    public int indexOf(String name) {
+        int id = base.indexOf(name);
+        if (id >= 0) {
+            return id;
+        }
+        Integer added = addedToId.get(name);
+        return added == null ? -1 : added;
+    }
+
+    @Override
+    public int indexOf(Vertex v) {
+        return indexOf(v.getName());
+    }
+
+    private int indexOfVertex(Object o) {
+        return o instanceof Vertex ? indexOf(((Vertex) o).getName()) : -1;
+    }
+
+    public Vertex getVertex(int v) {
+        return v < baseCount ? base.getVertex(v) : addedVertices.get(v - baseCount);
+    }
+
+    public int getDegree(int v) {
+        Set<Vertex> added = addedNeighbors.get(v);
+        return (v < baseCount ? base.getDegree(v) : 0) + (added == null ? 0 : added.size());
+    }
+
+    public boolean isEdgeBetween(int v0, int v1) {
+        if (v0 < baseCount && v1 < baseCount && base.isEdgeBetween(v0, v1)) {
+            return true;
+        }
+        Set<Vertex> added = addedNeighbors.get(v0);
+        return added != null && added.contains(getVertex(v1));
+    }
+
+    @Override
+    public void addRow(String[] valueRowSplits) {
+        addEdge(new Vertex(valueRowSplits[0]), new Vertex(valueRowSplits[1]));
+    }
+
+    @Override
+    public void addVertex(Vertex v) {
+        addVertexIndex(v);
+    }
+
+    /**
+     * Adding the vertex to the delta if it is new, in O(1).
+     *
+     * @return the id of the vertex
+     */
+    private int addVertexIndex(Vertex v) {
+        int id = indexOf(v.getName());
+        if (id < 0) {
+            id = baseCount + addedVertices.size();
+            addedToId.put(v.getName(), id);
+            addedVertices.add(v);
+        }
+        return id;
+    }
+
+    @Override
+    public void addEdge(Vertex v0, Vertex v1) {
+        int id0 = addVertexIndex(v0);
+        int id1 = addVertexIndex(v1);
+        if (isEdgeBetween(id0, id1)) {
+            return;
+        }
+        v0 = getVertex(id0);
+        v1 = getVertex(id1);
+        addedEdges.add(new Edge(v0, v1));
+        addNeighbor(id0, v1);
+        addNeighbor(id1, v0);
+    }
+
+    @Override
+    public void addAll(List<Vertex> newVertices, List<Edge> newEdges) {
+        for (Vertex v : newVertices) {
+            addVertexIndex(v);
+        }
+        for (Edge e : newEdges) {
+            addEdge(e.getV0(), e.getV1());
+        }
+    }
+
+    private void addNeighbor(int v, Vertex neighbor) {
+        Set<Vertex> neighbors = addedNeighbors.get(v);
+        if (neighbors == null) {
+            neighbors = new HashSet<>();
+            addedNeighbors.put(v, neighbors);
+        }
+        neighbors.add(neighbor);
+    }
+
+    @Override
+    public Map<Vertex, Set<Vertex>> getVertexToNeighbors() {
+        return new NeighborsMapView();
+    }
+
+    @Override
+    public Set<Edge> getEdges() {
+        return new EdgesView();
+    }
+
+    @Override
+    public List<Vertex> getVertices() {
+        return new VerticesView();
+    }
+
+    /**
+     * @return a new compressed-sparse-row graph of the base and the delta
+     */
+    @Override
+    public CompactGraph toCompactGraph() {
+        CompactGraph.Builder builder = new CompactGraph.Builder(getVertexCount(), base.getEdgeCount() + addedEdges.size());
+        for (int v = 0; v < baseCount; v++) {
+            builder.addVertex(base.getVertexName(v));
+        }
+        for (Vertex v : addedVertices) {
+            builder.addVertex(v.getName());
+        }
+        for (int v = 0; v < baseCount; v++) {
+            for (int i = base.getNeighborsStart(v); i < base.getNeighborsEnd(v); i++) {
+                int u = base.getNeighborAt(i);
+                if (u >= v) {
+                    builder.addEdge(v, u);
+                }
+            }
+        }
+        for (Edge e : addedEdges) {
+            builder.addEdge(indexOf(e.getV0()), indexOf(e.getV1()));
+        }
+        CompactGraph compactGraph = builder.build();
+        compactGraph.setPartitions(getPartitions());
+        compactGraph.setAnonymizationStats(getAnonymizationStats());
+        return compactGraph;
+    }
+
+    @Override
+    public Graph asMutableGraph() {
+        return this;
+    }
+
+    /**
+     * Iterating a second iterator after the first one.
+     */
+    private static class ConcatIterator<T> implements Iterator<T> {
+        private final Iterator<? extends T> first;
+        private final Iterator<? extends T> second;
+
+        ConcatIterator(Iterator<? extends T> first, Iterator<? extends T> second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return first.hasNext() || second.hasNext();
+        }
+
+        @Override
+        public T next() {
+            return first.hasNext() ? first.next() : second.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("OverlayGraph is append only");
+        }
+    }
+
+    /**
+     * Iterating the neighbors of a base vertex in the base.
+     */
+    private class RowIterator implements Iterator<Vertex> {
+        private final int end;
+        private int idx;
+
+        RowIterator(int v) {
+            this.idx = base.getNeighborsStart(v);
+            this.end = base.getNeighborsEnd(v);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return idx < end;
+        }
+
+        @Override
+        public Vertex next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return base.getVertex(base.getNeighborAt(idx++));
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("OverlayGraph is append only");
+        }
+    }
+
+    private class VerticesView extends AbstractList<Vertex> implements RandomAccess {
+        @Override
+        public Vertex get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException(String.valueOf(index));
+            }
+            return getVertex(index);
+        }
+
+        @Override
+        public int size() {
+            return getVertexCount();
+        }
+
+        @Override
+        public int indexOf(Object o) {
+            return indexOfVertex(o);
+        }
+
+        @Override
+        public int lastIndexOf(Object o) {
+            return indexOfVertex(o);
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return indexOfVertex(o) >= 0;
+        }
+    }
+
+    private class NeighborsView extends AbstractSet<Vertex> {
+        private final int v;
+
+        NeighborsView(int v) {
+            this.v = v;
+        }
+
+        @Override
+        public Iterator<Vertex> iterator() {
+            Set<Vertex> added = addedNeighbors.get(v);
+            Iterator<Vertex> baseNeighbors = v < baseCount ? new RowIterator(v) : Collections.<Vertex>emptyIterator();
+            return new ConcatIterator<>(baseNeighbors, added == null ? Collections.<Vertex>emptyIterator() : added.iterator());
+        }
+
+        @Override
+        public int size() {
+            return getDegree(v);
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            int u = indexOfVertex(o);
+            return u >= 0 && isEdgeBetween(v, u);
+        }
+    }
+
+    private class NeighborsMapView extends AbstractMap<Vertex, Set<Vertex>> {
+        @Override
+        public Set<Vertex> get(Object key) {
+            int v = indexOfVertex(key);
+            return v < 0 ? null : new NeighborsView(v);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return indexOfVertex(key) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return getVertexCount();
+        }
+
+        @Override
+        public Set<Vertex> keySet() {
+            return new AbstractSet<Vertex>() {
+                @Override
+                public Iterator<Vertex> iterator() {
+                    return getVertices().iterator();
+                }
+
+                @Override
+                public int size() {
+                    return getVertexCount();
+                }
+
+                @Override
+                public boolean contains(Object o) {
+                    return indexOfVertex(o) >= 0;
+                }
+            };
+        }
+
+        @Override
+        public Set<Entry<Vertex, Set<Vertex>>> entrySet() {
+            return new AbstractSet<Entry<Vertex, Set<Vertex>>>() {
+                @Override
+                public Iterator<Entry<Vertex, Set<Vertex>>> iterator() {
+                    return new Iterator<Entry<Vertex, Set<Vertex>>>() {
+                        private int v = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return v < getVertexCount();
+                        }
+
+                        @Override
+                        public Entry<Vertex, Set<Vertex>> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            Set<Vertex> neighbors = new NeighborsView(v);
+                            return new SimpleImmutableEntry<>(getVertex(v++), neighbors);
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException("OverlayGraph is append only");
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return getVertexCount();
+                }
+            };
+        }
+    }
+
+    private class EdgesView extends AbstractSet<Edge> {
+        @Override
+        public Iterator<Edge> iterator() {
+            return new ConcatIterator<>(base.getEdges().iterator(), addedEdges.iterator());
+        }
+
+        @Override
+        public int size() {
+            return base.getEdgeCount() + addedEdges.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Edge)) {
+                return false;
+            }
+            Edge edge = (Edge) o;
+            int v0 = indexOfVertex(edge.getV0());
+            int v1 = indexOfVertex(edge.getV1());
+            return v0 >= 0 && v1 >= 0 && isEdgeBetween(v0, v1);
+        }
+    }
+}
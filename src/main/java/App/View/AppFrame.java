@@ -4,8 +4,9 @@ import App.Common.UITasks.DataSetLoaderTask;
 import App.Algorithm.AlgorithmController;
 import App.Datasets.DataSetController;
 import App.Model.AlgoType;
+import App.Model.AnonymizationStats;
+import App.Model.CompactGraph;
 import App.Model.Graph;
-import org.apache.commons.lang.SerializationUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -34,6 +35,8 @@ public class AppFrame extends JFrame {
     public static final String ALGORITHMS = "Algorithms";
     public static final String CHOOSE_K = "K";
     public static final String DATA_SETS = "Data Sets";
+    public static final String NOT_LOADED = "Not loaded";
+    public static final String NOT_REALIZED = "%s anonymization with %s was not realized";
     private static final String FRAME_TITLE = "K-Anonymity Algorithm Simulator";
     private static final Boolean initDataSets = true;
 
@@ -176,20 +179,28 @@ public class AppFrame extends JFrame {
             public void run() {
                 Graph originalData = dataSetController.getDataSetToModel(dataSet);
                 if (originalData == null) {
+                    showLoadError(dataSet);
                     return;
                 }
-                Graph originalClone = (Graph) SerializationUtils.clone(originalData);
+                // the algorithms add to an overlay of the read only graph, the data set itself is not changed
+                CompactGraph original = originalData.freeze();
                 logger.debug(String.format("Start Algorithm %s on dataSet %s with K eqaul to %s", algorithm, dataSet, k));
                 long msBeforeRun = System.currentTimeMillis();
 
-                Graph anonymizeData = algorithmController.anonymize(algorithm, originalClone, Integer.valueOf(k));
+                Graph anonymizeData = algorithmController.anonymize(algorithm, original, Integer.valueOf(k));
 
+                String status = StringUtils.EMPTY;
                 if (anonymizeData != null) {
                     addViewToPanel(originalData, anonymizeData, msBeforeRun, algorithm, k, dataSet);
+                    AnonymizationStats stats = anonymizeData.getAnonymizationStats();
+                    if (stats != null && !stats.isRealized()) {
+                        status = String.format(NOT_REALIZED, k, algorithm);
+                        logger.warn(String.format("%s on dataSet %s: %s", status, dataSet, stats));
+                    }
                 }
 
                 // finish busy indication
-                setBusyIndication(StringUtils.EMPTY, true);
+                setBusyIndication(status, true);
             }
         });
         thread.start();
@@ -200,6 +211,18 @@ public class AppFrame extends JFrame {
         executeButton.setEnabled(isEnabled);
     }
 
+    /**
+     * Telling the user the data set has no model (it failed to load or is still loading) and enabling execute again.
+     */
+    private void showLoadError(String dataSet) {
+        String error = dataSetController.getLoadError(dataSet);
+        if (error == null) {
+            error = String.format("%s is not loaded yet", dataSet);
+        }
+        setBusyIndication(StringUtils.EMPTY, true);
+        JOptionPane.showMessageDialog(this, error, DATA_SETS, JOptionPane.ERROR_MESSAGE);
+    }
+
     private void addViewToPanel(Graph originalData, Graph anonymizedData, long before, String algorithm, String k, String dataset) {
         TableView table = new TableView(anonymizedData, originalData, before, algorithm, k);
         JPanel chartPanel = (JPanel) dataSetToChartPanel.get(dataset);
@@ -332,6 +355,11 @@ public class AppFrame extends JFrame {
                     Thread thread = new Thread(new Runnable() {
                         public void run() {
                             Graph dataSetToModel = dataSetController.getDataSetToModel(dataSet);
+                            if (dataSetToModel == null) {
+                                dataSetToProgressBar.get(dataSet).setString(NOT_LOADED);
+                                showLoadError(dataSet);
+                                return;
+                            }
                             addViewToPanel(dataSetToModel, dataSetToModel, 0, null, null, dataSet);
                             setBusyIndication(StringUtils.EMPTY, true);
                         }
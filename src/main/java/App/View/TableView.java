@@ -1,6 +1,7 @@
 package App.View;
 
 import App.Common.Utils.DemoDataCreator;
+import App.Model.AnonymizationStats;
 import App.Model.Graph;
 import App.Model.Vertex;
 import org.apache.commons.lang.StringUtils;
@@ -52,7 +53,13 @@ public class TableView extends JPanel {
 
         // setting title
         if (StringUtils.isNotEmpty(algorithm) && StringUtils.isNotEmpty(k)) {
-            this.title = String.format("%s anonymized with %s", k, algorithm);
+            AnonymizationStats stats = anonymizedData.getAnonymizationStats();
+            if (stats != null && !stats.isRealized()) {
+                // the budget ran out, the graph is not k anonymous
+                this.title = String.format("%s anonymization with %s NOT realized", k, algorithm);
+            } else {
+                this.title = String.format("%s anonymized with %s", k, algorithm);
+            }
         }
 
         // init UI components
@@ -0,0 +1,121 @@
+package App.lib.jNauty;
+
+import App.Model.CompactGraph;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Verifying that permutations of the vertex ids are automorphisms of a {@link CompactGraph}.
+ * <p>
+ * Only the vertices a permutation moves are checked: the neighbors of the image of such a vertex are stamped in an
+ * int array and every mapped neighbor must carry the stamp, so a permutation costs O(n) plus the degrees of the
+ * vertices it moves, and the check stops at the first edge which is not mapped to an edge.
+ * The stamp array belongs to the checker, so a checker is not thread safe; {@link #check(List, ForkJoinPool)}
+ * gives every pool task a checker of its own.
+ */
+public class AutomorphismChecker {
+    private final CompactGraph graph;
+    // vertex -> stamp of the last row it was seen in
+    private final int[] stamps;
+    private int stamp;
+
+    /**
+     * @param graph - the graph, neighbor rows sorted without duplicates
+     */
+    public AutomorphismChecker(CompactGraph graph) {
+        this.graph = graph;
+        this.stamps = new int[graph.getVertexCount()];
+    }
+
+    /**
+     * @param permutation - a permutation of the vertex ids
+     * @return true if every edge is mapped to an edge
+     */
+    public boolean isAutomorphism(Permutation permutation) {
+        int n = stamps.length;
+        for (int v = 0; v < n; v++) {
+            int image = permutation.get(v);
+            if (image == v) {
+                // edges between fixed vertices are mapped to themselves, the others are checked from the moved end
+                continue;
+            }
+            if (graph.getDegree(v) != graph.getDegree(image)) {
+                return false;
+            }
+            int mark = nextStamp();
+            for (int i = graph.getNeighborsStart(image), end = graph.getNeighborsEnd(image); i < end; i++) {
+                stamps[graph.getNeighborAt(i)] = mark;
+            }
+            // same degrees and no duplicate neighbors, so the neighbors are mapped onto the stamped row
+            for (int i = graph.getNeighborsStart(v), end = graph.getNeighborsEnd(v); i < end; i++) {
+                if (stamps[permutation.get(graph.getNeighborAt(i))] != mark) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param candidates - permutations of the vertex ids
+     * @param pool       - pool checking the candidates in parallel, null to check them in the calling thread
+     * @return by candidate: true if it is an automorphism
+     */
+    public boolean[] check(List<Permutation> candidates, ForkJoinPool pool) {
+        boolean[] result = new boolean[candidates.size()];
+        CheckTask task = new CheckTask(graph, candidates, result, 0, candidates.size());
+        if (pool == null) {
+            task.compute();
+        } else {
+            pool.invoke(task);
+        }
+        return result;
+    }
+
+    private int nextStamp() {
+        if (++stamp == 0) {
+            // wrapped around, old stamps could match again
+            Arrays.fill(stamps, 0);
+            stamp = 1;
+        }
+        return stamp;
+    }
+
+    /**
+     * Checking the candidates [from, to), large ranges are split between the pool threads.
+     */
+    private static class CheckTask extends RecursiveAction {
+        private static final int SEQUENTIAL_THRESHOLD = 4;
+
+        private final CompactGraph graph;
+        private final List<Permutation> candidates;
+        private final boolean[] result;
+        private final int from;
+        private final int to;
+
+        CheckTask(CompactGraph graph, List<Permutation> candidates, boolean[] result, int from, int to) {
+            this.graph = graph;
+            this.candidates = candidates;
+            this.result = result;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD) {
+                AutomorphismChecker checker = new AutomorphismChecker(graph);
+                for (int i = from; i < to; i++) {
+                    result[i] = checker.isAutomorphism(candidates.get(i));
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new CheckTask(graph, candidates, result, from, middle),
+                    new CheckTask(graph, candidates, result, middle, to));
+        }
+    }
+}
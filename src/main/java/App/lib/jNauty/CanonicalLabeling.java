@@ -0,0 +1,81 @@
+package App.lib.jNauty;
+
+/**
+ * Result of {@link McKayGraphLabelingAlgorithm} for a graph: its canonical labeling, the certificate of the relabeled
+ * graph and the orbits of its automorphism group.
+ * <p>
+ * Isomorphic graphs have the same certificate, so it identifies a graph up to isomorphism, while the labeling and
+ * the orbits are over the vertex ids of the graph they were computed for.
+ */
+public class CanonicalLabeling {
+    // vertex by canonical position
+    private final int[] labeling;
+    private final long certificate;
+    // smallest vertex of the orbit, by vertex
+    private final int[] orbitRepresentatives;
+
+    /**
+     * @param labeling             - vertex by canonical position, kept (not copied)
+     * @param certificate          - hash of the graph relabeled by the labeling
+     * @param orbitRepresentatives - smallest vertex of the orbit by vertex, kept (not copied)
+     */
+    public CanonicalLabeling(int[] labeling, long certificate, int[] orbitRepresentatives) {
+        this.labeling = labeling;
+        this.certificate = certificate;
+        this.orbitRepresentatives = orbitRepresentatives;
+    }
+
+    /**
+     * @param certificate - the graph relabeled by positions, as built by the search
+     * @return 64 bit hash of the certificate
+     */
+    static long hash(int[] certificate) {
+        long h = 0xCBF29CE484222325L;
+        for (int value : certificate) {
+            h = (h ^ value) * 0x100000001B3L;
+        }
+        return h ^ (h >>> 29);
+    }
+
+    public int getVertexCount() {
+        return labeling.length;
+    }
+
+    /**
+     * @return vertex by canonical position, must not be changed
+     */
+    public int[] getLabeling() {
+        return labeling;
+    }
+
+    /**
+     * @return the permutation mapping every vertex to its canonical position
+     */
+    public Permutation getCanonicalPermutation() {
+        return new Permutation(labeling).inverse();
+    }
+
+    public long getCertificate() {
+        return certificate;
+    }
+
+    /**
+     * @return smallest vertex of the orbit by vertex, must not be changed
+     */
+    public int[] getOrbitRepresentatives() {
+        return orbitRepresentatives;
+    }
+
+    public OrbitPartition getOrbits() {
+        OrbitPartition orbits = new OrbitPartition(orbitRepresentatives.length);
+        for (int v = 0; v < orbitRepresentatives.length; v++) {
+            orbits.union(v, orbitRepresentatives[v]);
+        }
+        return orbits;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("certificate %016x, %s vertices", certificate, labeling.length);
+    }
+}
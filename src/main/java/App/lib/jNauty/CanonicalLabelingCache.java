@@ -0,0 +1,167 @@
+package App.lib.jNauty;
+
+import App.Common.Utils.FileUtil;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link CanonicalLabeling} results by graph fingerprint, kept in memory and as files in a cache directory.
+ * <p>
+ * File layout (big endian): magic, version, fingerprint, vertex count, edge count, certificate, labeling ints, orbit
+ * representative ints. A file which can't be read is ignored and computed again. The vertex and edge counts are
+ * checked on every hit, a result for a graph of another size is a fingerprint collision.
+ */
+public class CanonicalLabelingCache {
+    private static Logger logger = Logger.getLogger(CanonicalLabelingCache.class);
+
+    public static final int MAGIC = 0x4B41434C; // "KACL"
+    // must change whenever the file layout or the labeling rules (refinement, search order, leaf comparison,
+    // certificate hash) change, files of another version are ignored instead of returning a stale labeling
+    public static final int VERSION = 2;
+
+    private final Map<Long, Entry> memory = new ConcurrentHashMap<>();
+    // null to keep the results in memory only
+    private final File directory;
+
+    /**
+     * @param directory - where the results are kept, null to keep them in memory only
+     */
+    public CanonicalLabelingCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @param fingerprint - fingerprint of the graph
+     * @param vertexCount - number of vertices of the graph
+     * @param edgeCount   - number of edges of the graph
+     * @return the result, or null if it is not cached
+     */
+    public CanonicalLabeling get(long fingerprint, int vertexCount, int edgeCount) {
+        Entry entry = memory.get(fingerprint);
+        if (entry == null && directory != null) {
+            Path file = getFile(fingerprint);
+            try {
+                entry = read(file, fingerprint);
+            } catch (IOException e) {
+                logger.warn(String.format("Ignoring canonical labeling %s", file), e);
+            }
+            if (entry != null) {
+                memory.put(fingerprint, entry);
+            }
+        }
+        if (entry == null || entry.labeling.getVertexCount() != vertexCount || entry.edgeCount != edgeCount) {
+            return null;
+        }
+        return entry.labeling;
+    }
+
+    /**
+     * @param fingerprint - fingerprint of the graph
+     * @param edgeCount   - number of edges of the graph
+     * @param labeling    - the result for the graph
+     */
+    public void put(long fingerprint, int edgeCount, CanonicalLabeling labeling) {
+        Entry entry = new Entry(edgeCount, labeling);
+        memory.put(fingerprint, entry);
+        if (directory == null) {
+            return;
+        }
+        Path file = getFile(fingerprint);
+        try {
+            write(file, fingerprint, entry);
+        } catch (IOException e) {
+            logger.warn(String.format("Failed to write canonical labeling %s", file), e);
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    private Path getFile(long fingerprint) {
+        return new File(directory, String.format("%016x.canon", fingerprint)).toPath();
+    }
+
+    private static Entry read(Path file, long fingerprint) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a canonical labeling " + file);
+            }
+            if (in.readInt() != VERSION || in.readLong() != fingerprint) {
+                return null;
+            }
+            int n = in.readInt();
+            if (n < 0 || 8L * n > Files.size(file)) {
+                throw new IOException("Corrupted canonical labeling " + file);
+            }
+            int edgeCount = in.readInt();
+            long certificate = in.readLong();
+            int[] labeling = new int[n];
+            for (int i = 0; i < n; i++) {
+                labeling[i] = in.readInt();
+            }
+            int[] representatives = new int[n];
+            for (int v = 0; v < n; v++) {
+                representatives[v] = in.readInt();
+                if (representatives[v] < 0 || representatives[v] >= n) {
+                    throw new IOException("Corrupted canonical labeling " + file);
+                }
+            }
+            return new Entry(edgeCount, new CanonicalLabeling(labeling, certificate, representatives));
+        }
+    }
+
+    /**
+     * Writing the result, the file is replaced atomically where the file system supports it.
+     */
+    private static void write(Path file, long fingerprint, Entry entry) throws IOException {
+        CanonicalLabeling labeling = entry.labeling;
+        FileUtil.createPrivateDirectories(file.toAbsolutePath().getParent());
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(fingerprint);
+                out.writeInt(labeling.getVertexCount());
+                out.writeInt(entry.edgeCount);
+                out.writeLong(labeling.getCertificate());
+                for (int v : labeling.getLabeling()) {
+                    out.writeInt(v);
+                }
+                for (int v : labeling.getOrbitRepresentatives()) {
+                    out.writeInt(v);
+                }
+            }
+            FileUtil.replaceFile(temp, file);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * A result with the edge count of its graph.
+     */
+    private static class Entry {
+        private final int edgeCount;
+        private final CanonicalLabeling labeling;
+
+        Entry(int edgeCount, CanonicalLabeling labeling) {
+            this.edgeCount = edgeCount;
+            this.labeling = labeling;
+        }
+    }
+}
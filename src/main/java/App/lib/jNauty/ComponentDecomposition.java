@@ -0,0 +1,161 @@
+package App.lib.jNauty;
+
+import App.Model.CompactGraph;
+
+import java.util.Arrays;
+
+/**
+ * Connected components of a {@link CompactGraph}.
+ * <p>
+ * Components are numbered by their smallest vertex id and their vertices are kept ascending, so the local id of a
+ * vertex in {@link #getSubgraph(int)} is its rank in the component and the subgraph rows stay sorted.
+ */
+public class ComponentDecomposition {
+    private final CompactGraph graph;
+    // component by vertex, local id in its component by vertex
+    private final int[] componentOf;
+    private final int[] localId;
+    // vertices ordered by component, the vertices of component c are at [starts[c], starts[c + 1])
+    private final int[] vertices;
+    private final int[] starts;
+
+    private ComponentDecomposition(CompactGraph graph, int[] componentOf, int[] localId, int[] vertices, int[] starts) {
+        this.graph = graph;
+        this.componentOf = componentOf;
+        this.localId = localId;
+        this.vertices = vertices;
+        this.starts = starts;
+    }
+
+    /**
+     * Labeling the components by breadth first search, O(V + E).
+     *
+     * @param graph - the graph
+     * @return the components of the graph
+     */
+    public static ComponentDecomposition of(CompactGraph graph) {
+        int n = graph.getVertexCount();
+        int[] componentOf = new int[n];
+        Arrays.fill(componentOf, -1);
+        int[] queue = new int[n];
+        int count = 0;
+        for (int root = 0; root < n; root++) {
+            if (componentOf[root] >= 0) {
+                continue;
+            }
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = root;
+            componentOf[root] = count;
+            while (head < tail) {
+                int v = queue[head++];
+                for (int i = graph.getNeighborsStart(v); i < graph.getNeighborsEnd(v); i++) {
+                    int u = graph.getNeighborAt(i);
+                    if (componentOf[u] < 0) {
+                        componentOf[u] = count;
+                        queue[tail++] = u;
+                    }
+                }
+            }
+            count++;
+        }
+
+        // counting sort of the vertices by component, ascending inside every component
+        int[] starts = new int[count + 1];
+        for (int v = 0; v < n; v++) {
+            starts[componentOf[v] + 1]++;
+        }
+        for (int c = 0; c < count; c++) {
+            starts[c + 1] += starts[c];
+        }
+        int[] vertices = queue;
+        int[] localId = new int[n];
+        int[] cursor = Arrays.copyOf(starts, count);
+        for (int v = 0; v < n; v++) {
+            int c = componentOf[v];
+            localId[v] = cursor[c] - starts[c];
+            vertices[cursor[c]++] = v;
+        }
+        return new ComponentDecomposition(graph, componentOf, localId, vertices, starts);
+    }
+
+    public CompactGraph getGraph() {
+        return graph;
+    }
+
+    public int getComponentCount() {
+        return starts.length - 1;
+    }
+
+    /**
+     * @param v - a vertex id
+     * @return the component of v
+     */
+    public int getComponent(int v) {
+        return componentOf[v];
+    }
+
+    public int getSize(int component) {
+        return starts[component + 1] - starts[component];
+    }
+
+    /**
+     * @param component - a component
+     * @param local     - a local id in the component
+     * @return the vertex id in the graph
+     */
+    public int getVertex(int component, int local) {
+        return vertices[starts[component] + local];
+    }
+
+    /**
+     * @param component - a component
+     * @return number of neighbor entries of its vertices (twice its edges, self loops once)
+     */
+    public int getArcCount(int component) {
+        int arcs = 0;
+        for (int i = starts[component]; i < starts[component + 1]; i++) {
+            arcs += graph.getDegree(vertices[i]);
+        }
+        return arcs;
+    }
+
+    /**
+     * @param component - a component
+     * @return hash of its size and its degree sequence, equal for isomorphic components
+     */
+    public long getInvariant(int component) {
+        int size = getSize(component);
+        int[] degrees = new int[size];
+        for (int local = 0; local < size; local++) {
+            degrees[local] = graph.getDegree(getVertex(component, local));
+        }
+        Arrays.sort(degrees);
+        long h = 0xCBF29CE484222325L ^ size;
+        for (int degree : degrees) {
+            h = (h ^ degree) * 0x100000001B3L;
+        }
+        return h;
+    }
+
+    /**
+     * @param component - a component
+     * @return the component as a graph of its own, vertex ids are the local ids
+     */
+    public CompactGraph getSubgraph(int component) {
+        int size = getSize(component);
+        String[] names = new String[size];
+        int[] offsets = new int[size + 1];
+        int[] adjacency = new int[getArcCount(component)];
+        int write = 0;
+        for (int local = 0; local < size; local++) {
+            int v = getVertex(component, local);
+            names[local] = graph.getVertexName(v);
+            for (int i = graph.getNeighborsStart(v); i < graph.getNeighborsEnd(v); i++) {
+                adjacency[write++] = localId[graph.getNeighborAt(i)];
+            }
+            offsets[local + 1] = write;
+        }
+        return CompactGraph.fromCsr(names, offsets, adjacency);
+    }
+}
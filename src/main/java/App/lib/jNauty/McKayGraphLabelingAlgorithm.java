@@ -1,16 +1,41 @@
 package App.lib.jNauty;
 
-import App.Common.Utils.DegreeUtil;
+import App.Common.Utils.FileUtil;
+import App.Model.CompactGraph;
 import App.Model.Edge;
 import App.Model.Graph;
 import App.Model.Vertex;
-import org.apache.commons.math3.util.Pair;
 import org.apache.log4j.Logger;
 
+import java.io.File;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * Implementation of McKay's canonical graph labeling algorithm
+ * <p>
+ * The search tree is walked depth first with a single {@link PartitionRefiner}, only the current path is kept.
+ * Every leaf is compared to the first one: if they differ by an automorphism it is recorded and the search jumps
+ * back to the first path. The automorphisms found this way are a strong generating set for the first path as base
+ * (McKay), they are kept as a {@link PermutationGroup} without Schreier-Sims closure, so
+ * the children of a first path node in the orbit of an explored child under the stabilizer of the path above it are
+ * pruned, and so are the nodes which do not split the partition like the first path does at the same level.
+ * <p>
+ * The canonical labeling is the leaf with the greatest cell counts along its path, then the greatest relabeled
+ * graph, both of which do not depend on the vertex ids. Its {@link CanonicalLabeling} and the orbits are cached by
+ * graph fingerprint, so repeated runs over an unchanged graph skip the refinement and the search.
+ * <p>
+ * A graph with several connected components is labeled component by component, in parallel. Components with the same
+ * degree sequence and certificate are isomorphic, their orbits are joined through their canonical labelings, and the
+ * canonical labeling of the graph is the concatenation of the component labelings ordered by size and certificate.
+ * <p>
+ * The first refinement of a large graph or component runs on a {@link ForkJoinPool}, it gives the same partition as
+ * the sequential one. The refinements of the search are small and stay on the searching thread.
  *
  * @param <V>
  * @param <E>
@@ -18,313 +43,618 @@ import java.util.*;
 public class McKayGraphLabelingAlgorithm<V extends Vertex, E extends Edge> {
     private static Logger logger = Logger.getLogger(McKayGraphLabelingAlgorithm.class);
 
-    public List<List<Integer>> getCyclicRepresenatation(Graph graph) {
-        List<Permutation> automorphisms = findAutomorphisms(graph);
-        logger.debug("Done to findAutomorphisms");
-        if (automorphisms == null || automorphisms.size() == 0) {
-            logger.debug("No orbits found");
-            return null;
-        }
+    // components up to this size are labeled on the calling thread
+    private static final int SMALL_COMPONENT = 16;
+    // arcs of a graph to refine its unit partition in parallel
+    private static final int PARALLEL_REFINEMENT = 1 << 16;
 
-        // 1.1 take the last automorphism and fetch his orbits
-        Permutation p = automorphisms.get(automorphisms.size() - 1);
-        return p.cyclicRepresenatation();
-    }
+    // results by graph fingerprint, null to always search
+    private CanonicalLabelingCache cache = new CanonicalLabelingCache(new File(FileUtil.getCacheDirectory(), "canonical"));
+    // number of threads labeling the connected components and refining large graphs, 1 to use the calling thread only
+    private int parallelism = Runtime.getRuntime().availableProcessors();
 
-    public List<Permutation> findAutomorphisms(Graph graph) {
-        // get information from graph:
-        Map<Vertex, Set<Vertex>> vertexToNeighbors = graph.getVertexToNeighbors();
-        Set<Edge> edges = graph.getEdges();
-
-        // create ordered partition
-        logger.debug("Start create ordered partition");
-        OrderedPartition<Vertex> pi = getVertexOrderedPartition(graph.getVertices());
-        // refinement
-        logger.debug("Start refinement");
-        OrderedPartition<Vertex> refined = refinementProcedure(pi, vertexToNeighbors);
-
-        // creating search tree
-        logger.debug("Start creating search tree");
-        SearchTree<Vertex> tree = createSearchTree(refined, vertexToNeighbors);
-        List<SearchTreeNode<Vertex>> terminalNodes = tree.getTerminalNodes();
-        // finding automorphisms
-        List<Permutation> automorphismsInner = findAutomorphismsInner(terminalNodes, graph.getVertices(), vertexToNeighbors, edges);
-        return automorphismsInner;
+    /**
+     * @param graph - the graph
+     * @return the orbits of the automorphism group, ordered by their first vertex index
+     */
+    public List<List<Vertex>> getCyclicRepresenatation(Graph graph) {
+        CompactGraph compactGraph = graph.toCompactGraph();
+        OrbitPartition orbits = getCanonicalLabeling(compactGraph).getOrbits();
+        logger.debug(String.format("Done to findAutomorphisms, %s orbits", orbits.getOrbitCount()));
+
+        List<List<Vertex>> result = new ArrayList<>(orbits.getOrbitCount());
+        for (int[] orbit : orbits.getOrbits()) {
+            List<Vertex> part = new ArrayList<>(orbit.length);
+            for (int v : orbit) {
+                part.add(compactGraph.getVertex(v));
+            }
+            result.add(part);
+        }
+        return result;
     }
 
-    private OrderedPartition<Vertex> getVertexOrderedPartition(List<Vertex> vertices) {
-        List<List<Vertex>> allVertices = new ArrayList<List<Vertex>>();
-        allVertices.add(vertices);
-        return new OrderedPartition<Vertex>(allVertices);
+    /**
+     * @param graph - the graph
+     * @return the orbits of the automorphism group, over the vertex indexes of the graph
+     */
+    public OrbitPartition findOrbits(Graph graph) {
+        return getCanonicalLabeling(graph).getOrbits();
     }
 
-    private OrderedPartition<Vertex> refinementProcedure(OrderedPartition<Vertex> pi, Map<Vertex, Set<Vertex>> vertexToNeighbors) {
-        OrderedPartition<Vertex> tau = new OrderedPartition<Vertex>(pi.getPartition());
-        List<Pair<List<Vertex>, List<Vertex>>> B = new ArrayList<Pair<List<Vertex>, List<Vertex>>>();
-        Map<Integer, List<Vertex>> degreesMap = new HashMap<Integer, List<Vertex>>();
-
-        int maxLoop = 5;
-        int counter = 0;
-        while (counter < maxLoop) {
-            counter++;
-            //logger.debug("refinementProcedure - Iteration start");
-            B.clear();
-            List<List<Vertex>> partition = tau.getPartition();
-            List<List<Vertex>> partition2 = tau.getPartition();
-            for (int i = 0; i < partition.size(); i++) {
-                List<Vertex> Vi = partition.get(i);
-
-                for (int j = 0; j < partition2.size(); j++) {
-                    //check if Vj shatters Vi
-                    List<Vertex> Vj = partition2.get(j);
-
-                    if (isDegreeShatters(Vi, Vj, vertexToNeighbors)) {
-                        B.add(new Pair(Vi, Vj));
-                        break;
-                    }
-                }
+    /**
+     * @param graph - the graph
+     * @return the canonical labeling, from the cache when the graph was labeled before
+     */
+    public CanonicalLabeling getCanonicalLabeling(Graph graph) {
+        CompactGraph compactGraph = graph.toCompactGraph();
+        long fingerprint = compactGraph.fingerprint();
+        if (cache != null) {
+            CanonicalLabeling cached = cache.get(fingerprint, compactGraph.getVertexCount(), compactGraph.getEdgeCount());
+            if (cached != null) {
+                logger.debug(String.format("Canonical labeling %016x from cache", fingerprint));
+                return cached;
             }
+        }
 
-            logger.debug("refinementProcedure - B size: " + B.size());
-            if (B.size() == 0) {
-                break;
+        ComponentDecomposition components = ComponentDecomposition.of(compactGraph);
+        CanonicalLabeling labeling;
+        ForkJoinPool pool = createRefinementPool(compactGraph);
+        try {
+            labeling = components.getComponentCount() > 1 ? labelComponents(components, pool) : label(compactGraph, pool);
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
             }
+        }
+        if (cache != null) {
+            cache.put(fingerprint, compactGraph.getEdgeCount(), labeling);
+        }
+        return labeling;
+    }
 
-            //now find the minimum element
-            //logger.debug("refinementProcedure - find the minimum element");
-            Pair<List<Vertex>, List<Vertex>> minimalPair = findMinimal(B, vertexToNeighbors);
+    private CanonicalLabeling label(CompactGraph compactGraph, ForkJoinPool pool) {
+        Search search = search(compactGraph, pool);
+        int[] representatives = new int[search.n];
+        for (int v = 0; v < representatives.length; v++) {
+            representatives[v] = search.orbits.getRepresentative(v);
+        }
+        return new CanonicalLabeling(search.bestLeaf, CanonicalLabeling.hash(search.bestCertificate), representatives);
+    }
 
-            //now replace Vi with X1,X2,...Xt
-            //logger.debug("refinementProcedure - replace Vi with X1,X2,...Xt");
-            degreesMap.clear();
-            List<Vertex> Vi = minimalPair.getKey();
-            List<Vertex> Vj = minimalPair.getValue();
+    /**
+     * Labeling every connected component on its own and stitching the results.
+     *
+     * @param pool - pool shared by the refinements of the large components, null to refine them sequentially
+     */
+    private CanonicalLabeling labelComponents(final ComponentDecomposition components, final ForkJoinPool pool) {
+        int count = components.getComponentCount();
+        logger.debug(String.format("Labeling %s components", count));
+        final CompactGraph[] subgraphs = new CompactGraph[count];
+        final CanonicalLabeling[] labelings = new CanonicalLabeling[count];
+        for (int c = 0; c < count; c++) {
+            subgraphs[c] = components.getSubgraph(c);
+        }
 
-            List<Integer> degrees = new ArrayList<Integer>();
-            for (int i = 0; i < Vi.size(); i++) {
-                Integer deg = getRetainDegree(Vi, i, Vj, vertexToNeighbors);
-                List<Vertex> verticesWithDegree = degreesMap.get(deg);
-                if (verticesWithDegree == null) {
-                    verticesWithDegree = new ArrayList<Vertex>();
-                    degreesMap.put(deg, verticesWithDegree);
+        // 1. the large components on the pool, the small ones on the calling thread
+        ExecutorService executor = parallelism > 1 ? Executors.newFixedThreadPool(parallelism) : null;
+        try {
+            List<Future<CanonicalLabeling>> futures = new ArrayList<>();
+            List<Integer> submitted = new ArrayList<>();
+            for (int c = 0; c < count; c++) {
+                if (executor != null && components.getSize(c) > SMALL_COMPONENT) {
+                    final CompactGraph subgraph = subgraphs[c];
+                    futures.add(executor.submit(new Callable<CanonicalLabeling>() {
+                        @Override
+                        public CanonicalLabeling call() {
+                            return label(subgraph, pool);
+                        }
+                    }));
+                    submitted.add(c);
                 }
-                verticesWithDegree.add(Vi.get(i));
-                if (!degrees.contains(deg)) {
-                    degrees.add(deg);
+            }
+            for (int c = 0; c < count; c++) {
+                if (executor == null || components.getSize(c) <= SMALL_COMPONENT) {
+                    labelings[c] = label(subgraphs[c], pool);
                 }
             }
-
-            // sort to insert those with lower degrees first
-            //logger.debug("refinementProcedure - sort");
-            Collections.sort(degrees);
-
-            //logger.debug("refinementProcedure - replacements");
-            List<List<Vertex>> replacements = new ArrayList<List<Vertex>>();
-            for (Integer degree : degrees) {
-                replacements.add(degreesMap.get(degree));
+            for (int i = 0; i < futures.size(); i++) {
+                labelings[submitted.get(i)] = getResult(futures.get(i));
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
             }
-
-            tau.replace(Vi, replacements);
         }
-        return tau;
-    }
 
-    /*
-     * For lexicographic total order
-     * (a,b) <= (c,d) if a<c or a=c and b<=d
-     */
-    private Pair<List<Vertex>, List<Vertex>> findMinimal(List<Pair<List<Vertex>, List<Vertex>>> B, Map<Vertex, Set<Vertex>> vertexToNeighbors) {
-        //logger.debug("findMinimal - Start");
-        Pair<List<Vertex>, List<Vertex>> minimalPair = null;
-        String minimalBinary1 = null;
-        String minimalBinary2 = null;
-
-        for (Pair<List<Vertex>, List<Vertex>> separationPair : B) {
-            //logger.debug("findMinimal - iteration");
-            //logger.debug("findMinimal - start binaryRepresenatation for binary1");
-            String binary1 = BinaryRepresentation.binaryRepresenatation(separationPair.getKey(), vertexToNeighbors);
-            //logger.debug("findMinimal - done binaryRepresenatation for binary1");
-
-            if (minimalPair == null) {
-                minimalPair = separationPair;
-                minimalBinary1 = binary1;
-            } else {
-                //compare current to minimal
-                if (binary1.compareTo(minimalBinary1) < 0) {
-                    minimalPair = separationPair;
-                    minimalBinary1 = binary1;
-                    minimalBinary2 = null;
-                } else if (binary1.compareTo(minimalBinary1) == 0) {
-                    if (minimalBinary2 == null) {
-                        //logger.debug("findMinimal - start binaryRepresenatation for minimalBinary2");
-                        minimalBinary2 = BinaryRepresentation.binaryRepresenatation(minimalPair.getValue(), vertexToNeighbors);
-                        //logger.debug("findMinimal - done binaryRepresenatation for minimalBinary2");
-                    }
+        // 2. orbits inside the components
+        CompactGraph graph = components.getGraph();
+        OrbitPartition orbits = new OrbitPartition(graph.getVertexCount());
+        for (int c = 0; c < count; c++) {
+            int[] representatives = labelings[c].getOrbitRepresentatives();
+            for (int local = 0; local < representatives.length; local++) {
+                orbits.union(components.getVertex(c, local), components.getVertex(c, representatives[local]));
+            }
+        }
 
-                    //logger.debug("findMinimal - start binaryRepresenatation for binary2");
-                    String binary2 = BinaryRepresentation.binaryRepresenatation(separationPair.getValue(), vertexToNeighbors);
-                    //logger.debug("findMinimal - done binaryRepresenatation for binary2");
-                    if (binary2.compareTo(minimalBinary2) <= 0) {
-                        minimalPair = separationPair;
-                        minimalBinary1 = binary1;
-                        minimalBinary2 = binary2;
+        // 3. orbits across isomorphic components, grouped by invariant and told apart by certificate
+        Map<Long, List<Integer>> classesByInvariant = new HashMap<>();
+        for (int c = 0; c < count; c++) {
+            List<Integer> classes = classesByInvariant.get(components.getInvariant(c));
+            if (classes == null) {
+                classes = new ArrayList<>();
+                classesByInvariant.put(components.getInvariant(c), classes);
+            }
+            boolean joined = false;
+            for (int representative : classes) {
+                if (labelings[representative].getCertificate() == labelings[c].getCertificate()
+                        && isIsomorphism(subgraphs[representative], labelings[representative], subgraphs[c], labelings[c])) {
+                    int[] from = labelings[representative].getLabeling();
+                    int[] to = labelings[c].getLabeling();
+                    for (int i = 0; i < from.length; i++) {
+                        orbits.union(components.getVertex(representative, from[i]), components.getVertex(c, to[i]));
                     }
+                    joined = true;
+                    break;
+                }
+            }
+            if (!joined) {
+                classes.add(c);
+            }
+        }
 
+        // 4. the component labelings concatenated by size, arcs and certificate
+        Integer[] order = new Integer[count];
+        final int[] arcs = new int[count];
+        for (int c = 0; c < count; c++) {
+            order[c] = c;
+            arcs[c] = components.getArcCount(c);
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int compared = Integer.compare(components.getSize(a), components.getSize(b));
+                if (compared == 0) {
+                    compared = Integer.compare(arcs[a], arcs[b]);
+                }
+                if (compared == 0) {
+                    compared = Long.compare(labelings[a].getCertificate(), labelings[b].getCertificate());
                 }
+                return compared;
             }
+        });
+        int[] labeling = new int[graph.getVertexCount()];
+        int write = 0;
+        long certificate = 0xCBF29CE484222325L;
+        for (int c : order) {
+            for (int local : labelings[c].getLabeling()) {
+                labeling[write++] = components.getVertex(c, local);
+            }
+            certificate = (certificate ^ labelings[c].getCertificate()) * 0x100000001B3L;
         }
-        //logger.debug("findMinimal - Done");
-        //System.out.println("Minimal pair is: " + minimalPair.getKey() + " " + minimalPair.getValue());
-        return minimalPair;
-    }
 
-    private SearchTree<Vertex> createSearchTree(OrderedPartition<Vertex> rootPartition, Map<Vertex, Set<Vertex>> vertexToNeighbors) {
-        //System.out.println("Root " + rootPartition);
-        SearchTree<Vertex> tree = new SearchTree<Vertex>(rootPartition);
-        SearchTreeNode<Vertex> root = tree.getRoot();
-        createSearchTree(root, vertexToNeighbors);
-        return tree;
+        int[] representatives = new int[labeling.length];
+        for (int v = 0; v < representatives.length; v++) {
+            representatives[v] = orbits.getRepresentative(v);
+        }
+        logger.debug(String.format("Done labeling components: %s orbits", orbits.getOrbitCount()));
+        return new CanonicalLabeling(labeling, certificate, representatives);
     }
 
-    private void createSearchTree(SearchTreeNode<Vertex> currentNode, Map<Vertex, Set<Vertex>> vertexToNeighbors) {
-        logger.debug("start createSearchTree recursive");
-        //split tree note, create children, process children
-        OrderedPartition<Vertex> currentPartition = currentNode.getNodePartition();
-        List<Vertex> firstNontrivialrPart = currentPartition.getFirstNontrivialPart();
-        if (firstNontrivialrPart == null) {
-            return;
+    /**
+     * @return true if mapping the vertices of a to the vertices of b at the same canonical positions keeps the edges
+     */
+    private static boolean isIsomorphism(CompactGraph a, CanonicalLabeling labelingA, CompactGraph b, CanonicalLabeling labelingB) {
+        int n = a.getVertexCount();
+        if (n != b.getVertexCount()) {
+            return false;
         }
-
-        //System.out.println("Current partition: " + currentPartition);
-        for (Vertex u : firstNontrivialrPart) {
-            //System.out.println("Splitting by " + u);
-            OrderedPartition<Vertex> partition = splitPartition(u, currentPartition);
-            partition = refinementProcedure(partition, vertexToNeighbors);
-            //System.out.println(partition);
-            new SearchTreeNode<Vertex>(partition, u, currentNode);
+        int[] fromA = labelingA.getLabeling();
+        int[] fromB = labelingB.getLabeling();
+        int[] images = new int[n];
+        for (int i = 0; i < n; i++) {
+            images[fromA[i]] = fromB[i];
         }
-        List<SearchTreeNode<Vertex>> children = currentNode.getChildren();
-        for (SearchTreeNode<Vertex> node : children) {
-            createSearchTree(node, vertexToNeighbors);
+        for (int v = 0; v < n; v++) {
+            if (a.getDegree(v) != b.getDegree(images[v])) {
+                return false;
+            }
+            for (int i = a.getNeighborsStart(v); i < a.getNeighborsEnd(v); i++) {
+                if (!b.isEdgeBetween(images[v], images[a.getNeighborAt(i)])) {
+                    return false;
+                }
+            }
         }
+        return true;
     }
 
-    private OrderedPartition<Vertex> splitPartition(Vertex u, OrderedPartition<Vertex> pi) {
-
-        //find part which contains u
-        List<Vertex> Vi = pi.partContainingVertex(u);
-        OrderedPartition<Vertex> piPrim = new OrderedPartition<Vertex>();
-        int i = pi.getPartition().indexOf(Vi);
-        for (int j = 0; j < pi.getPartition().size(); j++) {
-            List<Vertex> currentPart = pi.getPartition().get(j);
-            if (j != i) {
-                piPrim.addPart(currentPart);
-                continue;
-            }
-            //add trivial partition {u}
-            //add Vi/u
-            List<Vertex> uPart = new ArrayList<Vertex>();
-            uPart.add(u);
-            piPrim.addPart(uPart);
-            List<Vertex> ViPart = new ArrayList<Vertex>();
-            ViPart.addAll(Vi);
-            ViPart.remove(u);
-            piPrim.addPart(ViPart);
+    private static CanonicalLabeling getResult(Future<CanonicalLabeling> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
         }
+    }
 
-        return piPrim;
+    /**
+     * @param graph - the graph
+     * @return the automorphism group, over the vertex indexes of the graph
+     */
+    public PermutationGroup findAutomorphismGroup(Graph graph) {
+        return search(graph.toCompactGraph()).group;
     }
 
-    private List<Permutation> findAutomorphismsInner(List<SearchTreeNode<Vertex>> terminalNodes, List<Vertex> vertices, Map<Vertex, Set<Vertex>> vertexToNeighbors, Set<Edge> edges) {
-        logger.debug("Start findAutomorphismsInner");
-        List<Permutation> ret = new ArrayList<Permutation>();
+    /**
+     * @param graph - the graph
+     * @return generators of the automorphism group, over the vertex indexes of the graph
+     */
+    public List<Permutation> findAutomorphisms(Graph graph) {
+        return search(graph.toCompactGraph()).generators;
+    }
 
-        //calculate permutations
-        List<Permutation> allPermutations = new ArrayList<Permutation>();
-        for (SearchTreeNode<Vertex> node : terminalNodes) {
-            Permutation p = permutation(node.getNodePartition(), vertices);
-            allPermutations.add(p);
-        }
+    public CanonicalLabelingCache getCache() {
+        return cache;
+    }
 
-        for (int i = 0; i < allPermutations.size(); i++) {
-            for (int j = i; j < allPermutations.size(); j++) {
-                Permutation p1 = allPermutations.get(i);
-                Permutation p2 = allPermutations.get(j);
+    /**
+     * @param cache - results by graph fingerprint, null to always search
+     */
+    public void setCache(CanonicalLabelingCache cache) {
+        this.cache = cache;
+    }
 
-                //calculate p1 * (p2)^-1
-                Permutation inverse = p2.inverse();
-                Permutation p = p1.mul(inverse);
+    public int getParallelism() {
+        return parallelism;
+    }
 
-                if (!ret.contains(p)) {
-                    if (checkAutomorphism(p, vertices, vertexToNeighbors, edges)) {
-                        ret.add(p);
-                    }
-                }
+    /**
+     * @param parallelism - number of threads labeling the connected components and refining large graphs, 1 to use the calling thread only
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * @return a pool refining the graph in parallel, or null if the graph is too small or parallelism is 1
+     */
+    private ForkJoinPool createRefinementPool(CompactGraph compactGraph) {
+        if (parallelism > 1 && 2L * compactGraph.getEdgeCount() >= PARALLEL_REFINEMENT) {
+            return new ForkJoinPool(parallelism);
+        }
+        return null;
+    }
+
+    private Search search(CompactGraph compactGraph) {
+        ForkJoinPool pool = createRefinementPool(compactGraph);
+        try {
+            return search(compactGraph, pool);
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
             }
         }
-        logger.debug("Done findAutomorphismsInner");
-        return ret;
     }
 
-    private boolean checkAutomorphism(Permutation permutation, List<Vertex> vertices, Map<Vertex, Set<Vertex>> vertexToNeighbors, Set<Edge> edges) {
-        for (Edge e : edges) {
-            Vertex v0 = e.getV0();
-            Vertex v1 = e.getV1();
+    /**
+     * @param pool - pool refining the unit partition of a large graph, null to refine it on the calling thread
+     */
+    private Search search(CompactGraph compactGraph, ForkJoinPool pool) {
+        // create ordered partition and refine it, the same partition with or without the pool
+        logger.debug("Start refinement");
+        PartitionRefiner partition = new PartitionRefiner(compactGraph);
+        if (pool != null && 2L * compactGraph.getEdgeCount() >= PARALLEL_REFINEMENT) {
+            partition.setPool(pool);
+        }
+        partition.refine();
+        partition.setPool(null);
+
+        // walking the search tree
+        logger.debug("Start search");
+        Search search = new Search(compactGraph, partition);
+        search.run();
+        logger.debug(String.format("Done search: %s nodes, %s leaves, %s generators, group order %s",
+                search.nodes, search.leaves, search.generators.size(), search.group.order()));
+        return search;
+    }
 
-            Integer v0Index = vertices.indexOf(v0);
-            Integer v1Index = vertices.indexOf(v1);
+    /**
+     * State of the depth first search. Level l of the path is the partition after l individualizations.
+     */
+    private static class Search {
+        private final CompactGraph graph;
+        private final AutomorphismChecker checker;
+        private final PartitionRefiner partition;
+        private final int n;
+
+        // by level: start of the cell the children split, vertex individualized for the current child
+        private final int[] targetCell;
+        private final int[] child;
+        // by level: cell count of the current path, whether the path so far has the cell counts of the first path,
+        // how the path so far compares to the best path (1 greater, 0 equal, -1 less)
+        private final int[] pathCellCounts;
+        private final boolean[] matchesFirstPath;
+        private final int[] comparedToBestPath;
+        // number of levels the current path shares with the first path, with the best path
+        private int firstPathPrefix;
+        private int bestPathPrefix;
+
+        // cell counts of the first path by level, labeling of its leaf
+        private int[] firstPathCellCounts;
+        private int[] firstLeaf;
+        // cell counts of the path of the greatest leaf so far, its children, its labeling and the graph relabeled by it
+        private int[] bestPathCellCounts;
+        private int[] bestPath;
+        private int[] bestLeaf;
+        private int[] bestCertificate;
+
+        // every automorphism found, generator or not, with the number of best path levels it fixes
+        private final List<Permutation> automorphisms = new ArrayList<Permutation>();
+        private int[] fixedBestPathLevels = new int[16];
+        // orbits of the automorphisms fixing the best path above bestPathOrbitsLevel, null until needed
+        private OrbitPartition bestPathOrbits;
+        private int bestPathOrbitsLevel;
+
+        // orbits of the generators found so far
+        private final OrbitPartition orbits;
+        private final List<Permutation> generators = new ArrayList<Permutation>();
+        // the group they generate, with the first path as base
+        private PermutationGroup group;
+
+        private long nodes;
+        private long leaves;
+
+        Search(CompactGraph graph, PartitionRefiner partition) {
+            this.graph = graph;
+            this.checker = new AutomorphismChecker(graph);
+            this.partition = partition;
+            this.n = graph.getVertexCount();
+            this.targetCell = new int[n + 1];
+            this.child = new int[n + 1];
+            this.pathCellCounts = new int[n + 1];
+            this.matchesFirstPath = new boolean[n + 1];
+            this.comparedToBestPath = new int[n + 1];
+            this.orbits = new OrbitPartition(n);
+        }
 
-            Integer mappedV0Index = permutation.getPermutation().get(v0Index);
-            Integer mappedV1Index = permutation.getPermutation().get(v1Index);
+        void run() {
+            // 1. the first path, always the smallest vertex of the first non trivial cell
+            pathCellCounts[0] = partition.getCellCount();
+            matchesFirstPath[0] = true;
+            while (!partition.isDiscrete()) {
+                int level = partition.getLevel();
+                targetCell[level] = partition.getFirstNonTrivialCell();
+                child[level] = nextChild(targetCell[level], -1, null);
+                partition.individualize(child[level]);
+                pathCellCounts[level + 1] = partition.getCellCount();
+                matchesFirstPath[level + 1] = true;
+                nodes++;
+            }
+            int depth = partition.getLevel();
+            firstPathCellCounts = Arrays.copyOf(pathCellCounts, depth + 1);
+            firstLeaf = partition.getLabeling();
+            firstPathPrefix = depth;
+            bestPathCellCounts = firstPathCellCounts;
+            bestPath = Arrays.copyOf(child, depth);
+            bestLeaf = firstLeaf;
+            bestCertificate = certificate(firstLeaf);
+            bestPathPrefix = depth;
+            group = new PermutationGroup(n, Arrays.copyOf(child, depth));
+            leaves++;
+
+            // 2. the other children, deepest level first
+            int level = depth - 1;
+            while (level >= 0) {
+                partition.backtrack(level);
+                firstPathPrefix = Math.min(firstPathPrefix, level);
+                bestPathPrefix = Math.min(bestPathPrefix, level);
+                // every automorphism found so far left the first path at this level or below it, so they all fix the
+                // first path above and their orbits are the orbits of its stabilizer
+                OrbitPartition pruning = null;
+                if (firstPathPrefix == level) {
+                    pruning = orbits;
+                } else if (bestPathPrefix == level) {
+                    pruning = getBestPathOrbits(level);
+                }
+                int next = nextChild(targetCell[level], child[level], pruning);
+                if (next < 0) {
+                    level--;
+                    continue;
+                }
+                child[level] = next;
+                level = descend(level);
+            }
+        }
 
-            Vertex v0Mapped = vertices.get(mappedV0Index);
-            Vertex v1Mapped = vertices.get(mappedV1Index);
+        /**
+         * Individualizing the child of a level and going down the first children of its subtree.
+         *
+         * @return the level to continue from
+         */
+        private int descend(int level) {
+            while (true) {
+                partition.individualize(child[level]);
+                nodes++;
+                level++;
+                int cellCount = partition.getCellCount();
+                pathCellCounts[level] = cellCount;
+                matchesFirstPath[level] = matchesFirstPath[level - 1]
+                        && level < firstPathCellCounts.length && cellCount == firstPathCellCounts[level];
+                int compared = comparedToBestPath[level - 1];
+                if (compared == 0) {
+                    compared = level < bestPathCellCounts.length ? Integer.compare(cellCount, bestPathCellCounts[level]) : -1;
+                }
+                comparedToBestPath[level] = compared;
+                if (!matchesFirstPath[level] && compared < 0) {
+                    // can't end with a leaf equivalent to the first one nor greater than the best one
+                    return level - 1;
+                }
+                if (partition.isDiscrete()) {
+                    return leaf(level);
+                }
+                targetCell[level] = partition.getFirstNonTrivialCell();
+                child[level] = nextChild(targetCell[level], -1, null);
+            }
+        }
 
-            if (!DegreeUtil.isEdgeBetween(v0Mapped, v1Mapped, vertexToNeighbors)) {
-                return false;
+        /**
+         * @return the level to continue from: the node the current path left the first (or best) path at if the
+         * leaf is equivalent to the first (or best) leaf, the parent of the leaf otherwise
+         */
+        private int leaf(int level) {
+            leaves++;
+            if (matchesFirstPath[level] && isAutomorphism(firstLeaf)) {
+                return firstPathPrefix;
+            }
+            int compared = comparedToBestPath[level];
+            if (compared == 0 && bestLeaf != firstLeaf && isAutomorphism(bestLeaf)) {
+                return bestPathPrefix;
+            }
+            if (compared < 0) {
+                return level - 1;
             }
+            int[] labeling = partition.getLabeling();
+            int[] certificate = certificate(labeling);
+            if (compared > 0 || compare(certificate, bestCertificate) > 0) {
+                bestPathCellCounts = Arrays.copyOf(pathCellCounts, level + 1);
+                bestPath = Arrays.copyOf(child, level);
+                bestPathOrbits = null;
+                for (int i = 0; i < automorphisms.size(); i++) {
+                    fixedBestPathLevels[i] = countFixedBestPathLevels(automorphisms.get(i));
+                }
+                bestLeaf = labeling;
+                bestCertificate = certificate;
+                bestPathPrefix = level;
+                Arrays.fill(comparedToBestPath, 0, level + 1, 0);
+            }
+            return level - 1;
         }
-        return true;
-    }
 
-    private Permutation permutation(OrderedPartition<Vertex> discretePartition, List<Vertex> vertices) {
-        Map<Integer, Integer> permutation = new HashMap<Integer, Integer>();
-        for (int i = 0; i < discretePartition.getPartition().size(); i++) {
-            List<Vertex> part = discretePartition.getPartition().get(i);
-            Vertex v = part.get(0); //the only one
-            Integer vertexIndex = vertices.indexOf(v);
-            permutation.put(vertexIndex, i);
+        /**
+         * Recording the permutation from a leaf to the current one if it is a new automorphism.
+         *
+         * @return true if the permutation is an automorphism
+         */
+        private boolean isAutomorphism(int[] leaf) {
+            int[] images = new int[n];
+            for (int i = 0; i < n; i++) {
+                images[leaf[i]] = partition.getVertexAt(i);
+            }
+            Permutation permutation = new Permutation(images);
+            if (!checker.isAutomorphism(permutation)) {
+                return false;
+            }
+            recordAutomorphism(permutation);
+            // a leaf equivalent by a known automorphism still ends the subtree
+            if (!group.contains(permutation)) {
+                group.addStrongGenerator(permutation);
+                generators.add(permutation);
+                orbits.join(permutation);
+            }
+            return true;
         }
-        return new Permutation(permutation);
-    }
 
-    private boolean isDegreeShatters(List<Vertex> Vi, List<Vertex> Vj, Map<Vertex, Set<Vertex>> vertexToNeighbors) {
-        // Degree of first Vertex in Vi
-        int deg = getRetainDegree(Vi, 0, Vj, vertexToNeighbors);
+        /**
+         * Keeping an automorphism for the pruning of the best path, the orbits are joined with it when it fixes the
+         * best path above their level.
+         */
+        private void recordAutomorphism(Permutation permutation) {
+            int index = automorphisms.size();
+            automorphisms.add(permutation);
+            if (index == fixedBestPathLevels.length) {
+                fixedBestPathLevels = Arrays.copyOf(fixedBestPathLevels, index * 2);
+            }
+            fixedBestPathLevels[index] = countFixedBestPathLevels(permutation);
+            if (bestPathOrbits != null && fixedBestPathLevels[index] >= bestPathOrbitsLevel) {
+                bestPathOrbits.join(permutation);
+            }
+        }
 
-        // iterate Vi to
-        for (int m = 1; m < Vi.size(); m++) {
-            int degM = getRetainDegree(Vi, m, Vj, vertexToNeighbors);
+        /**
+         * @return the number of leading best path children the permutation fixes
+         */
+        private int countFixedBestPathLevels(Permutation permutation) {
+            int level = 0;
+            while (level < bestPath.length && permutation.get(bestPath[level]) == bestPath[level]) {
+                level++;
+            }
+            return level;
+        }
 
-            if (degM != deg) {
-                return true;
+        /**
+         * The best path is left bottom up like the first path, so the orbits only grow while it stays the best.
+         *
+         * @return the orbits of the automorphisms found so far which fix the best path above the level
+         */
+        private OrbitPartition getBestPathOrbits(int level) {
+            if (bestPathOrbits == null) {
+                bestPathOrbits = new OrbitPartition(n);
+                bestPathOrbitsLevel = bestPath.length + 1;
             }
+            if (level < bestPathOrbitsLevel) {
+                for (int i = 0; i < automorphisms.size(); i++) {
+                    int fixed = fixedBestPathLevels[i];
+                    if (fixed >= level && fixed < bestPathOrbitsLevel) {
+                        bestPathOrbits.join(automorphisms.get(i));
+                    }
+                }
+                bestPathOrbitsLevel = level;
+            }
+            return bestPathOrbits;
         }
 
-        return false;
-    }
+        /**
+         * @param labeling - vertex by position of a discrete partition
+         * @return the graph relabeled by positions: per position its degree and its neighbors' positions ascending
+         */
+        private int[] certificate(int[] labeling) {
+            int[] position = new int[n];
+            for (int i = 0; i < n; i++) {
+                position[labeling[i]] = i;
+            }
+            int[] certificate = new int[n + (n > 0 ? graph.getNeighborsEnd(n - 1) : 0)];
+            int write = 0;
+            for (int i = 0; i < n; i++) {
+                int v = labeling[i];
+                certificate[write++] = graph.getDegree(v);
+                int start = write;
+                for (int a = graph.getNeighborsStart(v); a < graph.getNeighborsEnd(v); a++) {
+                    certificate[write++] = position[graph.getNeighborAt(a)];
+                }
+                Arrays.sort(certificate, start, write);
+            }
+            return certificate;
+        }
 
-    private int getRetainDegree(List<Vertex> Vi, int idx, List<Vertex> Vj, Map<Vertex, Set<Vertex>> vertexToNeighbors) {
-        Set<Vertex> v0Neighbors = vertexToNeighbors.get(Vi.get(idx));
-        int deg = 0;
-        for (Vertex vNeighbor : v0Neighbors) {
-            if (Vj.contains(vNeighbor)) {
-                deg++;
+        private static int compare(int[] a, int[] b) {
+            for (int i = 0; i < a.length; i++) {
+                if (a[i] != b[i]) {
+                    return Integer.compare(a[i], b[i]);
+                }
             }
+            return 0;
         }
 
-        return deg;
+        /**
+         * @param cell     - start of the cell
+         * @param previous - the previous child, -1 for the first one
+         * @param pruning  - orbits to skip the vertices which are not the smallest of theirs in, null for none
+         * @return the smallest vertex of the cell greater than previous, -1 if none
+         */
+        private int nextChild(int cell, int previous, OrbitPartition pruning) {
+            int next = -1;
+            int end = cell + partition.getCellSize(cell);
+            for (int i = cell; i < end; i++) {
+                int v = partition.getVertexAt(i);
+                if (v > previous && (next < 0 || v < next) && (pruning == null || pruning.isRepresentative(v))) {
+                    next = v;
+                }
+            }
+            return next;
+        }
     }
 }
-
-
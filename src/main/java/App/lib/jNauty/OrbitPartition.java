@@ -0,0 +1,156 @@
+package App.lib.jNauty;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Orbits of the group generated by a growing set of permutations, as a union-find over 0..n-1.
+ * <p>
+ * Joining a generator costs O(n α(n)), so the orbits of any number of generators are found in near linear time.
+ * Every orbit also keeps its smallest point, the representative the search tree pruning relies on.
+ */
+public class OrbitPartition {
+    private final int[] parent;
+    // by root: number of points and smallest point of the orbit
+    private final int[] size;
+    private final int[] min;
+    private int orbitCount;
+
+    /**
+     * @param n - number of points, each one starts in an orbit of its own
+     */
+    public OrbitPartition(int n) {
+        parent = new int[n];
+        size = new int[n];
+        min = new int[n];
+        for (int v = 0; v < n; v++) {
+            parent[v] = v;
+            size[v] = 1;
+            min[v] = v;
+        }
+        orbitCount = n;
+    }
+
+    /**
+     * @param generators - permutations of 0..n-1
+     * @param n          - number of points
+     * @return the orbits of the group the generators generate
+     */
+    public static OrbitPartition of(List<Permutation> generators, int n) {
+        OrbitPartition orbits = new OrbitPartition(n);
+        for (Permutation generator : generators) {
+            orbits.join(generator);
+        }
+        return orbits;
+    }
+
+    /**
+     * @param v - a point
+     * @return the root of the orbit of v
+     */
+    public int find(int v) {
+        while (parent[v] != v) {
+            // path halving
+            parent[v] = parent[parent[v]];
+            v = parent[v];
+        }
+        return v;
+    }
+
+    /**
+     * @return true if a and b were in different orbits
+     */
+    public boolean union(int a, int b) {
+        int ra = find(a);
+        int rb = find(b);
+        if (ra == rb) {
+            return false;
+        }
+        if (size[ra] < size[rb]) {
+            int t = ra;
+            ra = rb;
+            rb = t;
+        }
+        parent[rb] = ra;
+        size[ra] += size[rb];
+        min[ra] = Math.min(min[ra], min[rb]);
+        orbitCount--;
+        return true;
+    }
+
+    /**
+     * Merging the orbit of every point with the orbit of its image.
+     *
+     * @param generator - a permutation of the points
+     * @return number of orbits merged
+     */
+    public int join(Permutation generator) {
+        int merged = 0;
+        for (int v = 0; v < parent.length; v++) {
+            if (union(v, generator.get(v))) {
+                merged++;
+            }
+        }
+        return merged;
+    }
+
+    public boolean isSameOrbit(int a, int b) {
+        return find(a) == find(b);
+    }
+
+    /**
+     * @param v - a point
+     * @return the smallest point of the orbit of v
+     */
+    public int getRepresentative(int v) {
+        return min[find(v)];
+    }
+
+    /**
+     * @param v - a point
+     * @return true if v is the smallest point of its orbit
+     */
+    public boolean isRepresentative(int v) {
+        return min[find(v)] == v;
+    }
+
+    public int getOrbitSize(int v) {
+        return size[find(v)];
+    }
+
+    public int getOrbitCount() {
+        return orbitCount;
+    }
+
+    /**
+     * @return the orbits ordered by their smallest point, the points of an orbit ascending
+     */
+    public List<int[]> getOrbits() {
+        int n = parent.length;
+        // orbit number by root, in the order of the smallest points
+        int[] orbitOf = new int[n];
+        Arrays.fill(orbitOf, -1);
+        List<int[]> orbits = new ArrayList<>(orbitCount);
+        int[] filled = new int[orbitCount];
+        for (int v = 0; v < n; v++) {
+            int root = find(v);
+            if (orbitOf[root] < 0) {
+                orbitOf[root] = orbits.size();
+                orbits.add(new int[size[root]]);
+            }
+            int orbit = orbitOf[root];
+            orbits.get(orbit)[filled[orbit]++] = v;
+        }
+        return orbits;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int[] orbit : getOrbits()) {
+            sb.append(Arrays.toString(orbit)).append(' ');
+        }
+        return sb.toString();
+    }
+}
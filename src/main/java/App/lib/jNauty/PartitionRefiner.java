@@ -0,0 +1,637 @@
+package App.lib.jNauty;
+
+import App.Model.CompactGraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Ordered partition of the vertices of a {@link CompactGraph}, refined to the coarsest equitable partition.
+ * <p>
+ * The vertices are kept in an array ordered by cell, every cell is a range of it and is identified by its start.
+ * Refinement pops splitter cells from a worklist, counts for every vertex its neighbors in the splitter and splits
+ * the touched cells by that count (lower counts first). A cell which was not waiting in the worklist only queues
+ * its new fragments but the largest one (Hopcroft), so a full refinement is O((V + E) log V).
+ * <p>
+ * The order of the cells only depends on the structure of the graph, not on the vertex ids, so it may be used for
+ * canonical labeling. Every {@link #individualize(int)} starts a new level, {@link #backtrack(int)} merges back the
+ * cells created after a level in O(V), so a search tree is walked with a single partition.
+ * <p>
+ * Given a pool ({@link #setPool(ForkJoinPool)}), large splitters are counted in parallel, every task into counters of
+ * its thread, and the hits are merged in task order; cells touched by many vertices are then sorted and split in
+ * parallel, each cell in its own range of the arrays, and their fragments are queued in cell order. So the partition
+ * is the same as the sequential one.
+ */
+public class PartitionRefiner {
+    private final CompactGraph graph;
+    private final int n;
+    // vertices ordered by cell
+    private final int[] lab;
+    // position of a vertex in lab
+    private final int[] pos;
+    // start of the cell of a vertex, the start is the id of the cell
+    private final int[] cellOf;
+    // size of a cell, by its start
+    private final int[] cellSize;
+    // level a cell was created at, by its start, NONE for a position which is not a start
+    private final int[] cellLevel;
+    private int cellCount;
+    private int level;
+    private final Workspace workspace;
+
+    private static final int NONE = -1;
+    // neighbor entries of a splitter to count it in parallel, splitter vertices per counting task
+    private static final int PARALLEL_COUNT_THRESHOLD = 1 << 15;
+    private static final int COUNT_SEQUENTIAL_THRESHOLD = 512;
+    // touched vertices to split the touched cells in parallel, and per splitting task
+    private static final int PARALLEL_SPLIT_THRESHOLD = 1 << 13;
+    private static final int SPLIT_SEQUENTIAL_THRESHOLD = 1 << 11;
+
+    private ForkJoinPool pool;
+    private ThreadLocal<Counter> counters;
+
+    /**
+     * Unit partition (a single cell).
+     *
+     * @param graph - the graph
+     */
+    public PartitionRefiner(CompactGraph graph) {
+        this(graph, null);
+    }
+
+    /**
+     * Partition by color, the cells are ordered by color ascending.
+     *
+     * @param graph  - the graph
+     * @param colors - color by vertex id (e.g. the degrees), null for the unit partition
+     */
+    public PartitionRefiner(CompactGraph graph, int[] colors) {
+        this.graph = graph;
+        this.n = graph.getVertexCount();
+        this.lab = new int[n];
+        this.pos = new int[n];
+        this.cellOf = new int[n];
+        this.cellSize = new int[n];
+        this.cellLevel = new int[n];
+        this.workspace = new Workspace(n);
+        Arrays.fill(cellLevel, NONE);
+
+        // sorting by color, vertex ids break the ties
+        long[] keys = new long[n];
+        for (int v = 0; v < n; v++) {
+            int color = colors == null ? 0 : colors[v];
+            keys[v] = ((long) color << 32) | v;
+        }
+        Arrays.sort(keys);
+        for (int i = 0; i < n; i++) {
+            int v = (int) keys[i];
+            lab[i] = v;
+            pos[v] = i;
+            if (i == 0 || (keys[i] >>> 32) != (keys[i - 1] >>> 32)) {
+                cellCount++;
+                cellOf[v] = i;
+                cellLevel[i] = 0;
+            } else {
+                cellOf[v] = cellOf[lab[i - 1]];
+            }
+            cellSize[cellOf[v]]++;
+        }
+    }
+
+    /**
+     * Refining to the coarsest equitable partition, every cell is a splitter.
+     */
+    public void refine() {
+        for (int c = 0; c < n; c += cellSize[c]) {
+            workspace.offer(c);
+        }
+        refineWorklist();
+    }
+
+    /**
+     * Starting the next level: splitting v out of its cell (as a cell of its own, just before the rest) and refining.
+     * The partition is expected to be equitable already, so only the new cell is a splitter.
+     *
+     * @param v - a vertex id
+     */
+    public void individualize(int v) {
+        level++;
+        int c = cellOf[v];
+        int size = cellSize[c];
+        if (size == 1) {
+            return;
+        }
+        swap(pos[v], c);
+        cellSize[c] = 1;
+        cellSize[c + 1] = size - 1;
+        cellLevel[c + 1] = level;
+        for (int i = c + 1; i < c + size; i++) {
+            cellOf[lab[i]] = c + 1;
+        }
+        cellCount++;
+        workspace.offer(c);
+        refineWorklist();
+    }
+
+    /**
+     * Going back to the partition of a previous level, by merging the cells created after it.
+     * The vertices keep their positions, which only reorders them inside the restored cells.
+     *
+     * @param toLevel - a level between 0 and the current one
+     */
+    public void backtrack(int toLevel) {
+        if (toLevel >= level) {
+            return;
+        }
+        level = toLevel;
+        cellCount = 0;
+        int start = 0;
+        for (int i = 0; i <= n; i++) {
+            if (i == n || cellLevel[i] <= toLevel && cellLevel[i] != NONE) {
+                if (i > 0) {
+                    cellSize[start] = i - start;
+                }
+                if (i == n) {
+                    break;
+                }
+                start = i;
+                cellCount++;
+            } else {
+                cellLevel[i] = NONE;
+            }
+            cellOf[lab[i]] = start;
+        }
+    }
+
+    /**
+     * @param pool - pool refining large splitters and cells in parallel, null to refine on the calling thread
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+        if (pool != null && counters == null) {
+            counters = new ThreadLocal<Counter>() {
+                @Override
+                protected Counter initialValue() {
+                    return new Counter(n);
+                }
+            };
+        }
+    }
+
+    private void refineWorklist() {
+        Workspace ws = workspace;
+        int[] count = ws.count;
+        while (!ws.isEmpty()) {
+            int w = ws.poll();
+            int wEnd = w + cellSize[w];
+
+            // 1. neighbors of the splitter per vertex
+            if (pool != null && getArcCount(w, wEnd) >= PARALLEL_COUNT_THRESHOLD) {
+                countParallel(w, wEnd);
+            } else {
+                count(w, wEnd);
+            }
+            int touchedSize = ws.touchedSize;
+            int touchedCellsSize = ws.touchedCellsSize;
+
+            // 2. moving the touched vertices to the tail of their cell
+            for (int i = 0; i < touchedSize; i++) {
+                int u = ws.touched[i];
+                int c = cellOf[u];
+                int tail = c + cellSize[c] - 1 - ws.moved[c]++;
+                swap(pos[u], tail);
+            }
+
+            // 3. splitting the touched cells, in order of position
+            Arrays.sort(ws.touchedCells, 0, touchedCellsSize);
+            if (pool != null && touchedCellsSize > 1 && touchedSize >= PARALLEL_SPLIT_THRESHOLD) {
+                int[] fragmentsSizes = new int[touchedCellsSize];
+                pool.invoke(new SplitTask(this, fragmentsSizes, 0, touchedCellsSize));
+                for (int i = 0; i < touchedCellsSize; i++) {
+                    int c = ws.touchedCells[i];
+                    queueFragments(c, fragmentsSizes[i]);
+                    ws.touchedInCell[c] = 0;
+                    ws.moved[c] = 0;
+                }
+            } else {
+                for (int i = 0; i < touchedCellsSize; i++) {
+                    int c = ws.touchedCells[i];
+                    queueFragments(c, split(c, ws.touchedInCell[c]));
+                    ws.touchedInCell[c] = 0;
+                    ws.moved[c] = 0;
+                }
+            }
+            for (int i = 0; i < touchedSize; i++) {
+                count[ws.touched[i]] = 0;
+            }
+        }
+    }
+
+    private int getArcCount(int from, int to) {
+        int arcs = 0;
+        for (int i = from; i < to; i++) {
+            arcs += graph.getDegree(lab[i]);
+        }
+        return arcs;
+    }
+
+    /**
+     * Counting the neighbors of the splitter vertices at [from, to) on the calling thread.
+     */
+    private void count(int from, int to) {
+        Workspace ws = workspace;
+        int[] count = ws.count;
+        int touchedSize = 0;
+        int touchedCellsSize = 0;
+        for (int i = from; i < to; i++) {
+            int v = lab[i];
+            for (int a = graph.getNeighborsStart(v); a < graph.getNeighborsEnd(v); a++) {
+                int u = graph.getNeighborAt(a);
+                if (count[u]++ == 0) {
+                    ws.touched[touchedSize++] = u;
+                    int c = cellOf[u];
+                    if (ws.touchedInCell[c]++ == 0) {
+                        ws.touchedCells[touchedCellsSize++] = c;
+                    }
+                }
+            }
+        }
+        ws.touchedSize = touchedSize;
+        ws.touchedCellsSize = touchedCellsSize;
+    }
+
+    /**
+     * Counting the neighbors of the splitter vertices at [from, to) on the pool, then merging the hits of the tasks
+     * in order, so the vertices are touched in the same order as by {@link #count(int, int)}.
+     */
+    private void countParallel(int from, int to) {
+        CountTask task = new CountTask(this, from, to);
+        pool.invoke(task);
+        Workspace ws = workspace;
+        ws.touchedSize = 0;
+        ws.touchedCellsSize = 0;
+        task.merge(ws);
+    }
+
+    /**
+     * Adding hits of a counting task to the counts.
+     */
+    private void addHits(Workspace ws, int[] vertices, int[] hits) {
+        int[] count = ws.count;
+        for (int i = 0; i < vertices.length; i++) {
+            int u = vertices[i];
+            if (count[u] == 0) {
+                ws.touched[ws.touchedSize++] = u;
+                int c = cellOf[u];
+                if (ws.touchedInCell[c]++ == 0) {
+                    ws.touchedCells[ws.touchedCellsSize++] = c;
+                }
+            }
+            count[u] += hits[i];
+        }
+    }
+
+    /**
+     * Splitting a cell by the neighbor counts, its touched vertices are at its tail.
+     * Only the range of the cell is written (the fragment starts too), so different cells may be split in parallel.
+     *
+     * @return number of fragments, their starts are at [c, c + fragments) of the fragments work array
+     */
+    private int split(int c, int touchedSize) {
+        int size = cellSize[c];
+        int end = c + size;
+        int touchedStart = end - touchedSize;
+        int[] count = workspace.count;
+
+        // sorting the touched vertices by count
+        long[] keys = workspace.keys;
+        for (int i = touchedStart; i < end; i++) {
+            keys[i] = ((long) count[lab[i]] << 32) | lab[i];
+        }
+        Arrays.sort(keys, touchedStart, end);
+        for (int i = touchedStart; i < end; i++) {
+            int v = (int) keys[i];
+            lab[i] = v;
+            pos[v] = i;
+        }
+
+        // fragments: the untouched vertices (count 0) and a run per count
+        int[] fragments = workspace.fragments;
+        int fragmentsSize = 0;
+        fragments[c + fragmentsSize++] = c;
+        for (int i = Math.max(touchedStart, c + 1); i < end; i++) {
+            if (i == touchedStart || count[lab[i]] != count[lab[i - 1]]) {
+                fragments[c + fragmentsSize++] = i;
+            }
+        }
+        if (fragmentsSize == 1) {
+            return 1;
+        }
+
+        for (int f = 0; f < fragmentsSize; f++) {
+            int start = fragments[c + f];
+            int fragmentEnd = f + 1 < fragmentsSize ? fragments[c + f + 1] : end;
+            cellSize[start] = fragmentEnd - start;
+            if (start != c) {
+                cellLevel[start] = level;
+                for (int i = start; i < fragmentEnd; i++) {
+                    cellOf[lab[i]] = start;
+                }
+            }
+        }
+        return fragmentsSize;
+    }
+
+    /**
+     * Queueing the fragments of a split cell: all of them if the cell was waiting in the worklist, else all but the
+     * largest one.
+     */
+    private void queueFragments(int c, int fragmentsSize) {
+        if (fragmentsSize == 1) {
+            return;
+        }
+        int[] fragments = workspace.fragments;
+        int largest = c;
+        for (int f = 0; f < fragmentsSize; f++) {
+            if (cellSize[fragments[c + f]] > cellSize[largest]) {
+                largest = fragments[c + f];
+            }
+        }
+        cellCount += fragmentsSize - 1;
+
+        boolean queued = workspace.isQueued(c);
+        for (int f = 0; f < fragmentsSize; f++) {
+            int start = fragments[c + f];
+            if (queued ? start != c : start != largest) {
+                workspace.offer(start);
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        int vi = lab[i];
+        int vj = lab[j];
+        lab[i] = vj;
+        pos[vj] = i;
+        lab[j] = vi;
+        pos[vi] = j;
+    }
+
+    public CompactGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @return number of individualizations not backtracked, 0 for the root
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    public int getCellCount() {
+        return cellCount;
+    }
+
+    /**
+     * @return true if every cell is a single vertex
+     */
+    public boolean isDiscrete() {
+        return cellCount == n;
+    }
+
+    /**
+     * @param v - a vertex id
+     * @return the cell of v (its start position)
+     */
+    public int getCell(int v) {
+        return cellOf[v];
+    }
+
+    /**
+     * @param cell - a cell start position
+     * @return number of vertices in the cell
+     */
+    public int getCellSize(int cell) {
+        return cellSize[cell];
+    }
+
+    /**
+     * @param idx - a position
+     * @return the vertex at the position in the order of the cells
+     */
+    public int getVertexAt(int idx) {
+        return lab[idx];
+    }
+
+    /**
+     * @return the first cell with more than one vertex, or -1 if the partition is discrete
+     */
+    public int getFirstNonTrivialCell() {
+        for (int c = 0; c < n; c += cellSize[c]) {
+            if (cellSize[c] > 1) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the vertices in the order of the cells, for a discrete partition the canonical labeling
+     */
+    public int[] getLabeling() {
+        return lab.clone();
+    }
+
+    /**
+     * @return the cells in order, each as its vertex ids
+     */
+    public List<int[]> getCells() {
+        List<int[]> cells = new ArrayList<>(cellCount);
+        for (int c = 0; c < n; c += cellSize[c]) {
+            cells.add(Arrays.copyOfRange(lab, c, c + cellSize[c]));
+        }
+        return cells;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int[] cell : getCells()) {
+            sb.append(Arrays.toString(cell)).append(' ');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Counters of a pool thread.
+     */
+    private static class Counter {
+        final int[] count;
+        final int[] touched;
+
+        Counter(int n) {
+            count = new int[n];
+            touched = new int[n];
+        }
+    }
+
+    /**
+     * Counting the neighbors of the splitter vertices at [from, to), large ranges are split between the pool threads.
+     */
+    private static class CountTask extends RecursiveAction {
+        private final PartitionRefiner refiner;
+        private final int from;
+        private final int to;
+        private CountTask left;
+        private CountTask right;
+        // touched vertices of a leaf task in the order they were touched, and their hits
+        private int[] vertices;
+        private int[] hits;
+
+        CountTask(PartitionRefiner refiner, int from, int to) {
+            this.refiner = refiner;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > COUNT_SEQUENTIAL_THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                left = new CountTask(refiner, from, middle);
+                right = new CountTask(refiner, middle, to);
+                invokeAll(left, right);
+                return;
+            }
+            CompactGraph graph = refiner.graph;
+            Counter counter = refiner.counters.get();
+            int[] count = counter.count;
+            int size = 0;
+            for (int i = from; i < to; i++) {
+                int v = refiner.lab[i];
+                for (int a = graph.getNeighborsStart(v); a < graph.getNeighborsEnd(v); a++) {
+                    int u = graph.getNeighborAt(a);
+                    if (count[u]++ == 0) {
+                        counter.touched[size++] = u;
+                    }
+                }
+            }
+            vertices = Arrays.copyOf(counter.touched, size);
+            hits = new int[size];
+            for (int i = 0; i < size; i++) {
+                hits[i] = count[vertices[i]];
+                count[vertices[i]] = 0;
+            }
+        }
+
+        void merge(Workspace ws) {
+            if (left != null) {
+                left.merge(ws);
+                right.merge(ws);
+            } else {
+                refiner.addHits(ws, vertices, hits);
+            }
+        }
+    }
+
+    /**
+     * Splitting the touched cells [from, to) of the workspace, large ranges are split between the pool threads.
+     */
+    private static class SplitTask extends RecursiveAction {
+        private final PartitionRefiner refiner;
+        // number of fragments, by touched cell
+        private final int[] fragmentsSizes;
+        private final int from;
+        private final int to;
+
+        SplitTask(PartitionRefiner refiner, int[] fragmentsSizes, int from, int to) {
+            this.refiner = refiner;
+            this.fragmentsSizes = fragmentsSizes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            Workspace ws = refiner.workspace;
+            int touched = 0;
+            for (int i = from; i < to; i++) {
+                touched += ws.touchedInCell[ws.touchedCells[i]];
+            }
+            if (to - from == 1 || touched <= SPLIT_SEQUENTIAL_THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    int c = ws.touchedCells[i];
+                    fragmentsSizes[i] = refiner.split(c, ws.touchedInCell[c]);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new SplitTask(refiner, fragmentsSizes, from, middle),
+                    new SplitTask(refiner, fragmentsSizes, middle, to));
+        }
+    }
+
+    /**
+     * Work arrays of the refinement.
+     */
+    private static class Workspace {
+        // neighbors in the splitter, by vertex
+        final int[] count;
+        final int[] touched;
+        final int[] touchedCells;
+        int touchedSize;
+        int touchedCellsSize;
+        // touched vertices by cell
+        final int[] touchedInCell;
+        // touched vertices already moved to the tail, by cell
+        final int[] moved;
+        // sort keys and fragment starts, by position
+        final long[] keys;
+        final int[] fragments;
+        // FIFO of splitter cells
+        private final int[] queue;
+        private final boolean[] queued;
+        private int head;
+        private int size;
+
+        Workspace(int n) {
+            count = new int[n];
+            touched = new int[n];
+            touchedCells = new int[n];
+            touchedInCell = new int[n];
+            moved = new int[n];
+            keys = new long[n];
+            fragments = new int[n];
+            queue = new int[Math.max(1, n)];
+            queued = new boolean[n];
+        }
+
+        void offer(int cell) {
+            if (queued[cell]) {
+                return;
+            }
+            queued[cell] = true;
+            queue[(head + size) % queue.length] = cell;
+            size++;
+        }
+
+        int poll() {
+            int cell = queue[head];
+            head = (head + 1) % queue.length;
+            size--;
+            queued[cell] = false;
+            return cell;
+        }
+
+        boolean isQueued(int cell) {
+            return queued[cell];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+    }
+}
@@ -1,85 +1,150 @@
 package App.lib.jNauty;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Map;
 
+/**
+ * Permutation of 0..n-1 as the array of images.
+ * <p>
+ * Besides the methods returning new permutations, {@link #mul(Permutation, Permutation)} and
+ * {@link #inverse(Permutation)} write into a caller provided permutation, so loops over many candidates do not
+ * allocate. The hash is cached and reset by these methods.
+ */
 public class Permutation {
 
-    private Map<Integer, Integer> permutation;
+    private final int[] images;
+    // 0 when not computed yet
+    private int hash;
 
-    public Permutation() {
-        permutation = new HashMap<Integer, Integer>();
+    /**
+     * Identity permutation.
+     *
+     * @param n - number of points
+     */
+    public Permutation(int n) {
+        images = new int[n];
+        for (int i = 0; i < n; i++) {
+            images[i] = i;
+        }
     }
 
-    public Permutation(Map<Integer, Integer> permutation) {
-        this.permutation = permutation;
+    /**
+     * @param images - image by point, kept (not copied)
+     */
+    public Permutation(int[] images) {
+        this.images = images;
     }
 
-    public Permutation inverse() {
-
-        //basically, switch keys and values
-        Map<Integer, Integer> inversePermutation = new HashMap<Integer, Integer>();
-
-        for (Integer key : permutation.keySet())
-            inversePermutation.put(permutation.get(key), key);
+    public int size() {
+        return images.length;
+    }
 
-        return new Permutation(inversePermutation);
+    /**
+     * @param u - a point
+     * @return the image of u
+     */
+    public int get(int u) {
+        return images[u];
     }
 
-    public Permutation mul(Permutation other) {
+    /**
+     * @return the images by point, must not be changed
+     */
+    public int[] getImages() {
+        return images;
+    }
 
-        Map<Integer, Integer> product = new HashMap<Integer, Integer>();
+    public Permutation inverse() {
+        Permutation ret = new Permutation(new int[images.length]);
+        inverse(ret);
+        return ret;
+    }
 
-        for (Integer key : permutation.keySet()) {
-            Integer composite = other.getPermutation().get(permutation.get(key));
-            product.put(key, composite);
+    /**
+     * @param target - receives the inverse, of the same size and not this
+     */
+    public void inverse(Permutation target) {
+        int[] inverse = target.images;
+        for (int i = 0; i < images.length; i++) {
+            inverse[images[i]] = i;
         }
-        return new Permutation(product);
+        target.hash = 0;
+    }
 
+    /**
+     * @param other - applied after this
+     * @return x -&gt; other(this(x))
+     */
+    public Permutation mul(Permutation other) {
+        Permutation ret = new Permutation(new int[images.length]);
+        mul(other, ret);
+        return ret;
     }
 
-    public int order() {
-        int order = 1;
-        Permutation result = new Permutation(new HashMap<Integer, Integer>(this.getPermutation()));
+    /**
+     * @param other  - applied after this
+     * @param target - receives x -&gt; other(this(x)), of the same size, may be this but not other
+     */
+    public void mul(Permutation other, Permutation target) {
+        int[] product = target.images;
+        for (int i = 0; i < images.length; i++) {
+            product[i] = other.images[images[i]];
+        }
+        target.hash = 0;
+    }
 
-        while (!result.isIdentityPermutation()) {
-            result = result.mul(this);
-            order++;
+    /**
+     * @return the least common multiple of the cycle lengths
+     */
+    public long order() {
+        long order = 1;
+        BitSet covered = new BitSet(images.length);
+        for (int start = covered.nextClearBit(0); start < images.length; start = covered.nextClearBit(start + 1)) {
+            long length = 0;
+            for (int next = start; !covered.get(next); next = images[next]) {
+                covered.set(next);
+                length++;
+            }
+            order = order / gcd(order, length) * length;
         }
         return order;
     }
 
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
     public boolean isIdentityPermutation() {
-        for (Integer key : permutation.keySet()) {
-            if (permutation.get(key) != key) {
+        for (int i = 0; i < images.length; i++) {
+            if (images[i] != i) {
                 return false;
             }
         }
         return true;
     }
 
+    /**
+     * @return the cycles, fixed points included, ordered by their smallest point
+     */
     public List<List<Integer>> cyclicRepresenatation() {
         List<List<Integer>> ret = new ArrayList<List<Integer>>();
-        List<Integer> covered = new ArrayList<Integer>();
-        for (Integer key : permutation.keySet()) {
-            if (covered.contains(key)) {
-                continue;
-            }
-
+        BitSet covered = new BitSet(images.length);
+        for (int start = covered.nextClearBit(0); start < images.length; start = covered.nextClearBit(start + 1)) {
             //start a cycle and add all
             List<Integer> cycle = new ArrayList<Integer>();
-            cycle.add(key);
-            Integer next = permutation.get(key);
-            while (next != key) {
+            for (int next = start; !covered.get(next); next = images[next]) {
+                covered.set(next);
                 cycle.add(next);
-                covered.add(next);
-                next = permutation.get(next);
             }
             ret.add(cycle);
         }
-
         return ret;
     }
 
@@ -88,11 +153,11 @@ public class Permutation {
      */
     public List<Integer> fix() {
         List<Integer> ret = new ArrayList<Integer>();
-
-        for (Integer key : permutation.keySet())
-            if (key == permutation.get(key))
-                ret.add(key);
-
+        for (int i = 0; i < images.length; i++) {
+            if (images[i] == i) {
+                ret.add(i);
+            }
+        }
         return ret;
     }
 
@@ -100,45 +165,37 @@ public class Permutation {
      * If β ∈ A and u ∈ V , then the orbit of u under β, denoted by orbitβ(u), is the set of
      * images of u under <β>, that is, orbit β(u) = {βi(u) | 0 ≤ i < k}
      *
-     * @param u
-     * @return
+     * @param u - a point
+     * @return the cycle of u, starting at u
      */
-    public List<Integer> orbit(Integer u) {
+    public List<Integer> orbit(int u) {
         List<Integer> ret = new ArrayList<Integer>();
-        int k = order();
-        Permutation degree = new Permutation(new HashMap<Integer, Integer>(permutation));
-        for (int i = 0; i < k; i++) {
-            if (i == 0) {
-                ret.add(u);
-            }
-            else if (i == 1) {
-                ret.add(permutation.get(u));
-            }
-            else {
-                degree = degree.mul(this);
-                ret.add(degree.getPermutation().get(u));
-            }
-        }
+        int next = u;
+        do {
+            ret.add(next);
+            next = images[next];
+        } while (next != u);
         return ret;
     }
 
-    public Map<Integer, Integer> getPermutation() {
-        return permutation;
-    }
-
-    public void setPermutation(Map<Integer, Integer> permutation) {
-        this.permutation = permutation;
-    }
-
     @Override
     public String toString() {
         return cyclicRepresenatation() + "";
+    }
 
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = Arrays.hashCode(images);
+            // 0 means not computed
+            hash = h == 0 ? 1 : h;
+        }
+        return hash;
     }
 
     @Override
     public boolean equals(Object obj) {
-
         if (this == obj)
             return true;
         if (obj == null)
@@ -146,16 +203,6 @@ public class Permutation {
         if (getClass() != obj.getClass())
             return false;
         Permutation other = (Permutation) obj;
-
-        if (other.getPermutation().size() != permutation.size())
-            return false;
-
-        for (Integer key : permutation.keySet()) {
-            if (!other.getPermutation().containsKey(key))
-                return false;
-            if (other.getPermutation().get(key) != permutation.get(key))
-                return false;
-        }
-        return true;
+        return hashCode() == other.hashCode() && Arrays.equals(images, other.images);
     }
 }
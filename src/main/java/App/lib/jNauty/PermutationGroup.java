@@ -0,0 +1,290 @@
+package App.lib.jNauty;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Permutation group of 0..n-1 as a base and strong generating set, built incrementally by the Schreier-Sims
+ * algorithm.
+ * <p>
+ * Level l holds the l-th base point, the strong generators fixing the base points before it, and the orbit of the
+ * base point under them as a Schreier vector. The generators of level l generate the stabilizer of the first l base
+ * points, so the group order, membership tests and the stabilizer chain all come from sifting through the levels.
+ * <p>
+ * {@link #add(Permutation)} closes the levels under the Schreier generators, which is needed for arbitrary
+ * generators. Generators which are known to make up a strong generating set for the base, like the automorphisms
+ * McKay's search finds relative to its first path, only extend the basic orbits by
+ * {@link #addStrongGenerator(Permutation)}.
+ */
+public class PermutationGroup {
+    private final int n;
+    private final List<Level> levels = new ArrayList<>();
+    // (level, orbit point, generator index) pairs whose Schreier generator is not sifted yet
+    private final Deque<int[]> pending = new ArrayDeque<>();
+
+    /**
+     * @param n - number of points
+     */
+    public PermutationGroup(int n) {
+        this(n, new int[0]);
+    }
+
+    /**
+     * @param n    - number of points
+     * @param base - the first base points, more are appended when a generator fixes all of them
+     */
+    public PermutationGroup(int n, int[] base) {
+        this.n = n;
+        for (int point : base) {
+            levels.add(new Level(point));
+        }
+    }
+
+    /**
+     * @param generators - permutations of 0..n-1
+     * @param n          - number of points
+     * @return the group the generators generate
+     */
+    public static PermutationGroup of(List<Permutation> generators, int n) {
+        PermutationGroup group = new PermutationGroup(n);
+        for (Permutation generator : generators) {
+            group.add(generator);
+        }
+        return group;
+    }
+
+    /**
+     * @param generator - a permutation of 0..n-1
+     * @return true if the group grew, false if the permutation was already in it
+     */
+    public boolean add(Permutation generator) {
+        Permutation residue = copy(generator);
+        int level = strip(residue, 0);
+        if (level == levels.size() && residue.isIdentityPermutation()) {
+            return false;
+        }
+        addToLevels(residue, level);
+        close(true);
+        return true;
+    }
+
+    /**
+     * Adding a generator without checking the Schreier generators: the levels are only complete once the generators
+     * added this way make up a strong generating set for the base.
+     *
+     * @param generator - a permutation of 0..n-1, not the identity
+     */
+    public void addStrongGenerator(Permutation generator) {
+        int level = 0;
+        while (level < levels.size() && generator.get(levels.get(level).basePoint) == levels.get(level).basePoint) {
+            level++;
+        }
+        addToLevels(generator, level);
+        close(false);
+    }
+
+    /**
+     * @param permutation - a permutation of 0..n-1
+     * @return true if the permutation is in the group
+     */
+    public boolean contains(Permutation permutation) {
+        Permutation residue = copy(permutation);
+        return strip(residue, 0) == levels.size() && residue.isIdentityPermutation();
+    }
+
+    public BigInteger order() {
+        BigInteger order = BigInteger.ONE;
+        for (Level level : levels) {
+            order = order.multiply(BigInteger.valueOf(level.orbit.size()));
+        }
+        return order;
+    }
+
+    public int getBaseLength() {
+        return levels.size();
+    }
+
+    public int[] getBase() {
+        int[] base = new int[levels.size()];
+        for (int i = 0; i < base.length; i++) {
+            base[i] = levels.get(i).basePoint;
+        }
+        return base;
+    }
+
+    /**
+     * @param level - a level of the stabilizer chain
+     * @return the orbit of the base point of the level under the stabilizer of the base points before it
+     */
+    public int[] getBasicOrbit(int level) {
+        List<Integer> orbit = levels.get(level).orbit;
+        int[] ret = new int[orbit.size()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = orbit.get(i);
+        }
+        return ret;
+    }
+
+    /**
+     * @param level - a level of the stabilizer chain, up to the base length
+     * @return generators of the stabilizer of the first level base points, must not be changed
+     */
+    public List<Permutation> getStrongGenerators(int level) {
+        if (level >= levels.size()) {
+            return new ArrayList<>();
+        }
+        return levels.get(level).generators;
+    }
+
+    /**
+     * @param level - a level of the stabilizer chain, up to the base length
+     * @return the number of generators of the stabilizer of the first level base points
+     */
+    public int getStrongGeneratorCount(int level) {
+        return level >= levels.size() ? 0 : levels.get(level).generators.size();
+    }
+
+    /**
+     * @param level - a level of the stabilizer chain, up to the base length
+     * @return the orbits of all the points under the stabilizer of the first level base points
+     */
+    public OrbitPartition getStabilizerOrbits(int level) {
+        return OrbitPartition.of(getStrongGenerators(level), n);
+    }
+
+    /**
+     * Sifting a permutation down the stabilizer chain, in place.
+     *
+     * @param h    - fixing the base points before the level
+     * @param from - the first level to sift through
+     * @return the level at which the image of the base point fell out of the basic orbit, the base length if none
+     */
+    private int strip(Permutation h, int from) {
+        for (int l = from; l < levels.size(); l++) {
+            Level level = levels.get(l);
+            int p = h.get(level.basePoint);
+            if (!level.labels.containsKey(p)) {
+                return l;
+            }
+            // walk the Schreier vector back to the base point
+            while (p != level.basePoint) {
+                Permutation inverse = level.inverses.get(level.labels.get(p));
+                h.mul(inverse, h);
+                p = inverse.get(p);
+            }
+        }
+        return levels.size();
+    }
+
+    /**
+     * @param h     - fixing the base points before the level, not in the stabilizer of the level
+     * @param level - the level h was sifted to
+     */
+    private void addToLevels(Permutation h, int level) {
+        if (level == levels.size()) {
+            // h fixes every base point, extending the base by the first point it moves
+            int point = 0;
+            while (h.get(point) == point) {
+                point++;
+            }
+            levels.add(new Level(point));
+        }
+        Permutation inverse = h.inverse();
+        for (int l = 0; l <= level; l++) {
+            Level lvl = levels.get(l);
+            int index = lvl.generators.size();
+            lvl.generators.add(h);
+            lvl.inverses.add(inverse);
+            for (int i = 0; i < lvl.orbit.size(); i++) {
+                pending.add(new int[]{l, lvl.orbit.get(i), index});
+            }
+        }
+    }
+
+    /**
+     * Extending the basic orbits, and sifting Schreier generators until every level is closed.
+     *
+     * @param sift - false to only extend the basic orbits
+     */
+    private void close(boolean sift) {
+        while (!pending.isEmpty()) {
+            int[] pair = pending.poll();
+            Level level = levels.get(pair[0]);
+            int p = pair[1];
+            Permutation generator = level.generators.get(pair[2]);
+            int image = generator.get(p);
+            if (!level.labels.containsKey(image)) {
+                level.addPoint(image, pair[2]);
+                for (int g = 0; g < level.generators.size(); g++) {
+                    pending.add(new int[]{pair[0], image, g});
+                }
+                continue;
+            }
+            if (!sift) {
+                continue;
+            }
+            // Schreier generator u(p) * generator * u(image)^-1, stripping u(image) at the level itself
+            Permutation h = level.transversal(p, n);
+            h.mul(generator, h);
+            int stopped = strip(h, pair[0]);
+            if (stopped < levels.size() || !h.isIdentityPermutation()) {
+                addToLevels(h, stopped);
+            }
+        }
+    }
+
+    private static Permutation copy(Permutation permutation) {
+        return new Permutation(permutation.getImages().clone());
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("order ").append(order()).append(", base");
+        for (Level level : levels) {
+            sb.append(' ').append(level.basePoint).append(':').append(level.orbit.size());
+        }
+        return sb.toString();
+    }
+
+    private static class Level {
+        private final int basePoint;
+        private final List<Permutation> generators = new ArrayList<>();
+        private final List<Permutation> inverses = new ArrayList<>();
+        // orbit point -> index of the generator mapping its predecessor to it, -1 for the base point
+        private final Map<Integer, Integer> labels = new HashMap<>();
+        private final List<Integer> orbit = new ArrayList<>();
+
+        Level(int basePoint) {
+            this.basePoint = basePoint;
+            addPoint(basePoint, -1);
+        }
+
+        void addPoint(int point, int generator) {
+            labels.put(point, generator);
+            orbit.add(point);
+        }
+
+        /**
+         * @return a permutation mapping the base point to the orbit point p
+         */
+        Permutation transversal(int p, int n) {
+            List<Permutation> path = new ArrayList<>();
+            while (p != basePoint) {
+                int g = labels.get(p);
+                path.add(generators.get(g));
+                p = inverses.get(g).get(p);
+            }
+            Permutation u = new Permutation(n);
+            for (int i = path.size() - 1; i >= 0; i--) {
+                u.mul(path.get(i), u);
+            }
+            return u;
+        }
+    }
+}
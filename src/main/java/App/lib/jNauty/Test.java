@@ -1,6 +1,7 @@
 package App.lib.jNauty;
 
 import App.Common.Utils.DemoDataCreator;
+import App.Model.Graph;
 
 import java.util.List;
 
@@ -11,23 +12,20 @@ public class Test {
 
     public static void main(String[] args) {
         McKayGraphLabelingAlgorithm algo = new McKayGraphLabelingAlgorithm();
-        List<Permutation> automorphisms = algo.findAutomorphisms(DemoDataCreator.generateGraphSymmetry());
+        Graph graph = DemoDataCreator.generateGraphSymmetry();
+        List<Permutation> automorphisms = algo.findAutomorphisms(graph);
 
-        // take the last permutation
-        Permutation p = automorphisms.get(automorphisms.size() - 1);
+        // print generators
+        System.out.println("generators:");
+        for (Permutation p : automorphisms) {
+            System.out.println(p.cyclicRepresenatation());
+        }
 
         // print orbits
         System.out.println("orbits 0-7:");
-        System.out.println(p.orbit(0));
-        System.out.println(p.orbit(1));
-        System.out.println(p.orbit(2));
-        System.out.println(p.orbit(3));
-        System.out.println(p.orbit(4));
-        System.out.println(p.orbit(5));
-        System.out.println(p.orbit(6));
-        System.out.println(p.orbit(7));
+        System.out.println(OrbitPartition.of(automorphisms, graph.getVertices().size()));
 
-        System.out.println("cyclicRepresenatation:");
-        System.out.println(p.cyclicRepresenatation());
+        // print group
+        System.out.println(PermutationGroup.of(automorphisms, graph.getVertices().size()));
     }
 }
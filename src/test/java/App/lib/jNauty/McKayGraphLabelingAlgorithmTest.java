@@ -0,0 +1,252 @@
+package App.lib.jNauty;
+
+import App.Model.CompactGraph;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks McKay's search against a brute force enumeration of the automorphisms of small random graphs.
+ * <p>
+ * The group is kept as the automorphisms of the first and best leaves without Schreier-Sims closure, so its order,
+ * membership test and orbits are right only while those automorphisms are a strong generating set for the first
+ * path as base. Changes to the pruning of the search which break that fail here.
+ */
+public class McKayGraphLabelingAlgorithmTest {
+    private static final int GRAPHS = 3000;
+    private static final int MAX_VERTICES = 8;
+
+    private McKayGraphLabelingAlgorithm<?, ?> algorithm;
+    private Random random;
+
+    @Before
+    public void setUp() {
+        algorithm = new McKayGraphLabelingAlgorithm<>();
+        algorithm.setCache(null);
+        random = new Random(14);
+    }
+
+    @Test
+    public void groupMatchesBruteForce() {
+        for (int t = 0; t < GRAPHS; t++) {
+            boolean[][] adjacency = randomGraph(t);
+            int n = adjacency.length;
+            CompactGraph graph = toGraph(adjacency);
+            List<int[]> automorphisms = bruteForceAutomorphisms(adjacency);
+            String message = "graph " + t + " " + toString(adjacency);
+
+            PermutationGroup group = algorithm.findAutomorphismGroup(graph);
+            assertEquals(message, BigInteger.valueOf(automorphisms.size()), group.order());
+            for (int[] automorphism : automorphisms) {
+                assertTrue(message, group.contains(new Permutation(automorphism.clone())));
+            }
+            int[] other = randomPermutation(n);
+            if (!isAutomorphism(adjacency, other)) {
+                assertFalse(message, group.contains(new Permutation(other)));
+            }
+
+            OrbitPartition expected = new OrbitPartition(n);
+            for (int[] automorphism : automorphisms) {
+                for (int v = 0; v < n; v++) {
+                    expected.union(v, automorphism[v]);
+                }
+            }
+            OrbitPartition orbits = algorithm.findOrbits(graph);
+            for (int v = 0; v < n; v++) {
+                assertEquals(message, expected.getRepresentative(v), orbits.getRepresentative(v));
+            }
+        }
+    }
+
+    @Test
+    public void canonicalFormIsRelabelingInvariant() {
+        for (int t = 0; t < GRAPHS; t++) {
+            boolean[][] adjacency = randomGraph(t);
+            int[] relabeling = randomPermutation(adjacency.length);
+            boolean[][] relabeled = relabel(adjacency, relabeling);
+            String message = "graph " + t + " " + toString(adjacency);
+
+            CanonicalLabeling labeling = algorithm.getCanonicalLabeling(toGraph(adjacency));
+            CanonicalLabeling other = algorithm.getCanonicalLabeling(toGraph(relabeled));
+            assertEquals(message, labeling.getCertificate(), other.getCertificate());
+            assertArrayEquals(message, canonicalForm(adjacency, labeling), canonicalForm(relabeled, other));
+            assertEquals(message, labeling.getOrbits().getOrbitCount(), other.getOrbits().getOrbitCount());
+        }
+    }
+
+    /**
+     * Dense and sparse random graphs, disjoint copies of a random graph (isomorphic components) and circulant graphs
+     * (large groups), by turns.
+     */
+    private boolean[][] randomGraph(int t) {
+        switch (t % 3) {
+            case 0: {
+                int n = 1 + random.nextInt(MAX_VERTICES);
+                int sparsity = 1 + random.nextInt(4);
+                boolean[][] adjacency = new boolean[n][n];
+                for (int u = 0; u < n; u++) {
+                    for (int v = u + 1; v < n; v++) {
+                        if (random.nextInt(sparsity + 1) == 0) {
+                            adjacency[u][v] = adjacency[v][u] = true;
+                        }
+                    }
+                }
+                return adjacency;
+            }
+            case 1: {
+                int size = 1 + random.nextInt(4);
+                int copies = 1 + random.nextInt(MAX_VERTICES / size);
+                boolean[][] component = new boolean[size][size];
+                for (int u = 0; u < size; u++) {
+                    for (int v = u + 1; v < size; v++) {
+                        if (random.nextBoolean()) {
+                            component[u][v] = component[v][u] = true;
+                        }
+                    }
+                }
+                int n = size * copies + random.nextInt(2);
+                boolean[][] adjacency = new boolean[n][n];
+                for (int c = 0; c < copies; c++) {
+                    for (int u = 0; u < size; u++) {
+                        for (int v = 0; v < size; v++) {
+                            adjacency[c * size + u][c * size + v] = component[u][v];
+                        }
+                    }
+                }
+                return adjacency;
+            }
+            default: {
+                int n = 3 + random.nextInt(MAX_VERTICES - 2);
+                boolean[][] adjacency = new boolean[n][n];
+                for (int jump = 1; jump <= n / 2; jump++) {
+                    if (random.nextBoolean()) {
+                        for (int u = 0; u < n; u++) {
+                            adjacency[u][(u + jump) % n] = adjacency[(u + jump) % n][u] = true;
+                        }
+                    }
+                }
+                return adjacency;
+            }
+        }
+    }
+
+    private static CompactGraph toGraph(boolean[][] adjacency) {
+        int n = adjacency.length;
+        CompactGraph.Builder builder = new CompactGraph.Builder(n, n * n);
+        for (int v = 0; v < n; v++) {
+            builder.addVertex(String.valueOf(v));
+        }
+        for (int u = 0; u < n; u++) {
+            for (int v = u + 1; v < n; v++) {
+                if (adjacency[u][v]) {
+                    builder.addEdge(u, v);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return every automorphism, extending partial maps only while they keep the edges among the mapped vertices
+     */
+    private static List<int[]> bruteForceAutomorphisms(boolean[][] adjacency) {
+        List<int[]> automorphisms = new ArrayList<>();
+        int n = adjacency.length;
+        extend(adjacency, new int[n], new boolean[n], 0, automorphisms);
+        return automorphisms;
+    }
+
+    private static void extend(boolean[][] adjacency, int[] images, boolean[] used, int u, List<int[]> automorphisms) {
+        if (u == images.length) {
+            automorphisms.add(images.clone());
+            return;
+        }
+        for (int image = 0; image < images.length; image++) {
+            if (used[image]) {
+                continue;
+            }
+            boolean consistent = true;
+            for (int w = 0; w < u && consistent; w++) {
+                consistent = adjacency[u][w] == adjacency[image][images[w]];
+            }
+            if (consistent) {
+                used[image] = true;
+                images[u] = image;
+                extend(adjacency, images, used, u + 1, automorphisms);
+                used[image] = false;
+            }
+        }
+    }
+
+    private static boolean isAutomorphism(boolean[][] adjacency, int[] images) {
+        for (int u = 0; u < images.length; u++) {
+            for (int v = 0; v < images.length; v++) {
+                if (adjacency[u][v] != adjacency[images[u]][images[v]]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private int[] randomPermutation(int n) {
+        int[] images = new int[n];
+        for (int v = 0; v < n; v++) {
+            images[v] = v;
+        }
+        for (int v = n - 1; v > 0; v--) {
+            int w = random.nextInt(v + 1);
+            int swap = images[v];
+            images[v] = images[w];
+            images[w] = swap;
+        }
+        return images;
+    }
+
+    private static boolean[][] relabel(boolean[][] adjacency, int[] images) {
+        int n = adjacency.length;
+        boolean[][] relabeled = new boolean[n][n];
+        for (int u = 0; u < n; u++) {
+            for (int v = 0; v < n; v++) {
+                relabeled[images[u]][images[v]] = adjacency[u][v];
+            }
+        }
+        return relabeled;
+    }
+
+    /**
+     * @return the adjacency matrix with the vertices in canonical order, row by row
+     */
+    private static boolean[] canonicalForm(boolean[][] adjacency, CanonicalLabeling labeling) {
+        int n = adjacency.length;
+        int[] order = labeling.getLabeling();
+        boolean[] form = new boolean[n * n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                form[i * n + j] = adjacency[order[i]][order[j]];
+            }
+        }
+        return form;
+    }
+
+    private static String toString(boolean[][] adjacency) {
+        StringBuilder edges = new StringBuilder("n=").append(adjacency.length);
+        for (int u = 0; u < adjacency.length; u++) {
+            for (int v = u + 1; v < adjacency.length; v++) {
+                if (adjacency[u][v]) {
+                    edges.append(' ').append(u).append('-').append(v);
+                }
+            }
+        }
+        return edges.toString();
+    }
+}